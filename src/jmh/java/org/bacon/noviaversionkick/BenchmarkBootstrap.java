@@ -0,0 +1,26 @@
+package org.bacon.noviaversionkick;
+
+import net.minecraft.Bootstrap;
+import net.minecraft.SharedConstants;
+import net.minecraft.registry.DynamicRegistryManager;
+import net.minecraft.registry.Registries;
+
+/**
+ * Boots vanilla registries once per benchmark JVM. Mixins are not applied here,
+ * so benchmarks call the plain classes the mixins delegate to.
+ */
+public final class BenchmarkBootstrap {
+    private static DynamicRegistryManager registries;
+
+    private BenchmarkBootstrap() {
+    }
+
+    public static synchronized DynamicRegistryManager registries() {
+        if (registries == null) {
+            SharedConstants.createGameVersion();
+            Bootstrap.initialize();
+            registries = DynamicRegistryManager.of(Registries.REGISTRIES);
+        }
+        return registries;
+    }
+}
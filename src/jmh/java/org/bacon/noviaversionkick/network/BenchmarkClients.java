@@ -0,0 +1,85 @@
+package org.bacon.noviaversionkick.network;
+
+import io.netty.channel.Channel;
+import io.netty.channel.embedded.EmbeddedChannel;
+import net.minecraft.network.ClientConnection;
+import net.minecraft.network.NetworkSide;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * A table of open connections backed by embedded channels, plus the brands and
+ * mod lists the tracker benchmarks feed into it.
+ */
+final class BenchmarkClients {
+    static final String[] BRANDS = {
+        "vanilla",
+        "fabric",
+        "forge",
+        "lunarclient:v2.16.1-2410",
+        "fabric\u0000lunarclient:v2.16.1-2410",
+        "quilt\u0000fabric-api",
+        "feather\u0000forge\u0000optifine"
+    };
+    private static final String[] COMMON_MODS = {
+        "minecraft", "java", "sodium", "lithium", "iris", "modmenu", "cloth-config", "indium", "ferritecore",
+        "entityculling", "immediatelyfast", "krypton", "c2me", "starlight", "lambdynlights", "appleskin"
+    };
+    private static final int[] MOD_LIST_SIZES = {0, 1, 12, 60, 150, 400};
+
+    final ClientConnection[] connections;
+    final Channel[] channels;
+    final List<List<String>> modLists;
+
+    BenchmarkClients(int size, long seed) {
+        this.connections = new ClientConnection[size];
+        this.channels = new Channel[size];
+        for (int i = 0; i < size; i++) {
+            ClientConnection connection = new ClientConnection(NetworkSide.SERVERBOUND);
+            // Registering the connection as a handler fires channelActive, which binds its channel.
+            this.channels[i] = new EmbeddedChannel(connection);
+            this.connections[i] = connection;
+        }
+        Random random = new Random(seed);
+        this.modLists = new ArrayList<>();
+        for (int listSize : MOD_LIST_SIZES) {
+            this.modLists.add(modList(listSize, false, random));
+            this.modLists.add(modList(listSize, true, random));
+        }
+    }
+
+    void populate() {
+        for (int i = 0; i < this.connections.length; i++) {
+            ViaBrandTracker.setBrand(this.connections[i], this.channels[i], BRANDS[i % BRANDS.length]);
+            ViaBrandTracker.setClientModList(this.connections[i], this.channels[i], this.modLists.get(i % this.modLists.size()));
+        }
+    }
+
+    void close() {
+        for (int i = 0; i < this.connections.length; i++) {
+            ViaBrandTracker.removeClient(this.connections[i], this.channels[i]);
+            this.channels[i].close();
+        }
+    }
+
+    private static List<String> modList(int size, boolean fabric, Random random) {
+        List<String> mods = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            if (i < COMMON_MODS.length) {
+                mods.add(COMMON_MODS[i]);
+            } else {
+                mods.add("examplemod_" + Integer.toHexString(random.nextInt()));
+            }
+        }
+        if (fabric && size > 0) {
+            // Loader ids usually appear near the end of the list.
+            mods.set(size - 1, "fabricloader");
+            if (size > 2) {
+                mods.set(size - 2, "fabric-api");
+            }
+        }
+        return List.copyOf(mods);
+    }
+}
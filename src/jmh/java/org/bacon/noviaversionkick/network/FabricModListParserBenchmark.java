@@ -0,0 +1,167 @@
+package org.bacon.noviaversionkick.network;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import net.minecraft.network.PacketByteBuf;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link FabricModListParser} against the copy-and-retry parser it replaced, on
+ * well-formed payloads of each layout and on a payload whose count claims far
+ * more entries than it carries.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FabricModListParserBenchmark {
+    @Param({"versioned_12", "versioned_300", "counted_300", "unterminated_300", "bogus_count"})
+    public String payload;
+
+    private ByteBuf buf;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        PacketByteBuf out = new PacketByteBuf(Unpooled.buffer());
+        switch (this.payload) {
+            case "versioned_12" -> writeVersioned(out, 12);
+            case "versioned_300" -> writeVersioned(out, 300);
+            case "counted_300" -> {
+                out.writeVarInt(300);
+                for (int i = 0; i < 300; i++) {
+                    out.writeString(modId(i));
+                }
+            }
+            case "unterminated_300" -> {
+                for (int i = 0; i < 300; i++) {
+                    out.writeString(modId(i));
+                }
+            }
+            case "bogus_count" -> {
+                out.writeVarInt(1);
+                out.writeVarInt(1_000_000);
+                for (int i = 0; i < 40; i++) {
+                    out.writeString(modId(i));
+                }
+                // A string prefix claiming more bytes than follow.
+                out.writeVarInt(4096);
+                out.writeBytes(new byte[64]);
+            }
+            default -> throw new IllegalArgumentException(this.payload);
+        }
+        this.buf = out;
+    }
+
+    @Benchmark
+    public List<String> streaming() {
+        return FabricModListParser.parse(this.buf);
+    }
+
+    @Benchmark
+    public List<String> copyAndRetry() {
+        PacketByteBuf duplicate = new PacketByteBuf(this.buf.copy());
+        try {
+            return parseWithRetries(duplicate);
+        } finally {
+            duplicate.release();
+        }
+    }
+
+    private static void writeVersioned(PacketByteBuf out, int mods) {
+        out.writeVarInt(1);
+        out.writeVarInt(mods);
+        for (int i = 0; i < mods; i++) {
+            out.writeString(modId(i));
+            out.writeString("1." + i + ".0+mc1.21.11");
+        }
+    }
+
+    private static String modId(int index) {
+        return switch (index) {
+            case 0 -> "fabricloader";
+            case 1 -> "fabric-api";
+            case 2 -> "Sodium";
+            default -> "examplemod_" + index;
+        };
+    }
+
+    /**
+     * The parser as it stood before {@link FabricModListParser}, kept here as the
+     * baseline.
+     */
+    private static List<String> parseWithRetries(PacketByteBuf buf) {
+        List<String> modIds = new ArrayList<>();
+        buf.markReaderIndex();
+        try {
+            int handshakeVersion = buf.readVarInt();
+            if (handshakeVersion >= 0 && handshakeVersion <= 5) {
+                int modCount = buf.readVarInt();
+                for (int i = 0; i < modCount; i++) {
+                    String modId = buf.readString(Short.MAX_VALUE).trim();
+                    if (buf.isReadable()) {
+                        buf.readString(Short.MAX_VALUE);
+                    }
+                    if (!modId.isEmpty()) {
+                        modIds.add(modId.toLowerCase(Locale.ROOT));
+                    }
+                }
+                if (!modIds.isEmpty()) {
+                    return modIds;
+                }
+            }
+        } catch (Throwable ignored) {
+        }
+        buf.resetReaderIndex();
+
+        try {
+            int modCount = buf.readVarInt();
+            for (int i = 0; i < modCount; i++) {
+                String modId = buf.readString(Short.MAX_VALUE).trim();
+                if (!modId.isEmpty()) {
+                    modIds.add(modId.toLowerCase(Locale.ROOT));
+                }
+            }
+            if (!modIds.isEmpty()) {
+                return modIds;
+            }
+        } catch (Throwable ignored) {
+        }
+        buf.resetReaderIndex();
+
+        try {
+            Set<String> deduplicated = new HashSet<>();
+            while (buf.isReadable()) {
+                String modId = buf.readString(Short.MAX_VALUE).trim();
+                if (modId.isEmpty()) {
+                    break;
+                }
+                deduplicated.add(modId.toLowerCase(Locale.ROOT));
+            }
+            if (!deduplicated.isEmpty()) {
+                modIds.addAll(deduplicated);
+            }
+        } catch (Throwable ignored) {
+        }
+        return modIds;
+    }
+}
@@ -0,0 +1,68 @@
+package org.bacon.noviaversionkick.network;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.embedded.EmbeddedChannel;
+import net.minecraft.network.packet.s2c.common.KeepAliveS2CPacket;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What a non-particle packet pays on its way from {@code sendInternal} to the
+ * encoder, with and without {@link ParticleEncodingHandler} in the pipeline. The
+ * encoder is replaced by a sink, so only pipeline traversal is measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParticleHandlerOverheadBenchmark {
+    @Param({"false", "true"})
+    public boolean particleHandler;
+
+    private EmbeddedChannel channel;
+    private KeepAliveS2CPacket packet;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        this.channel = new EmbeddedChannel(new Sink());
+        if (this.particleHandler) {
+            this.channel.pipeline().addLast(ParticleEncodingHandler.NAME, new ParticleEncodingHandler());
+        }
+        this.packet = new KeepAliveS2CPacket(42L);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        this.channel.close();
+    }
+
+    @Benchmark
+    public void write() {
+        this.channel.pipeline().write(this.packet, this.channel.voidPromise());
+    }
+
+    /** Stands in for the packet encoder and discards everything written to it. */
+    private static final class Sink extends ChannelOutboundHandlerAdapter {
+        @Override
+        public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) {
+            promise.trySuccess();
+        }
+    }
+}
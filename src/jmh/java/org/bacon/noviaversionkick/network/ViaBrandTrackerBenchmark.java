@@ -0,0 +1,99 @@
+package org.bacon.noviaversionkick.network;
+
+import org.bacon.noviaversionkick.BenchmarkBootstrap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Event loops reading the particle decision while login threads rewrite brands
+ * and mod lists of the same connections. The encoder group size stands in for
+ * the number of event loops; override it with {@code -tg 16,1,1} to size for a
+ * particular machine.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ViaBrandTrackerBenchmark {
+    @Param({"10", "1000", "10000"})
+    public int clients;
+
+    private BenchmarkClients table;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            // Spread threads over the table instead of walking it in lockstep.
+            this.next = (int) (Thread.currentThread().threadId() * 7919);
+        }
+
+        int advance(int size) {
+            int index = Math.floorMod(this.next, size);
+            this.next = index + 1;
+            return index;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BenchmarkBootstrap.registries();
+        this.table = new BenchmarkClients(this.clients, 42L);
+        this.table.populate();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        this.table.close();
+    }
+
+    @Benchmark
+    @Group("churn")
+    @GroupThreads(4)
+    public boolean encode(Cursor cursor) {
+        return ViaBrandTracker.shouldUseLegacyParticles(this.table.channels[cursor.advance(this.clients)]);
+    }
+
+    @Benchmark
+    @Group("churn")
+    @GroupThreads(1)
+    public void brand(Cursor cursor) {
+        int index = cursor.advance(this.clients);
+        ViaBrandTracker.setBrand(
+            this.table.connections[index],
+            this.table.channels[index],
+            BenchmarkClients.BRANDS[(index + cursor.next) % BenchmarkClients.BRANDS.length]
+        );
+    }
+
+    @Benchmark
+    @Group("churn")
+    @GroupThreads(1)
+    public void modList(Cursor cursor) {
+        int index = cursor.advance(this.clients);
+        ViaBrandTracker.setClientModList(
+            this.table.connections[index],
+            this.table.channels[index],
+            this.table.modLists.get((index + cursor.next) % this.table.modLists.size())
+        );
+    }
+}
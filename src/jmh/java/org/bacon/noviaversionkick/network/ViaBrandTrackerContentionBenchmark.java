@@ -0,0 +1,142 @@
+package org.bacon.noviaversionkick.network;
+
+import org.bacon.noviaversionkick.BenchmarkBootstrap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scaling of each tracker operation on its own at 1, 4, 16 and 64 threads. Writers
+ * all hitting a small table is the case that exposes lock regressions.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ViaBrandTrackerContentionBenchmark {
+    @Param({"10", "1000", "10000"})
+    public int clients;
+
+    private BenchmarkClients table;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BenchmarkBootstrap.registries();
+        this.table = new BenchmarkClients(this.clients, 42L);
+        this.table.populate();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        this.table.close();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean lookup1(ViaBrandTrackerBenchmark.Cursor cursor) {
+        return lookup(cursor);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean lookup4(ViaBrandTrackerBenchmark.Cursor cursor) {
+        return lookup(cursor);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public boolean lookup16(ViaBrandTrackerBenchmark.Cursor cursor) {
+        return lookup(cursor);
+    }
+
+    @Benchmark
+    @Threads(64)
+    public boolean lookup64(ViaBrandTrackerBenchmark.Cursor cursor) {
+        return lookup(cursor);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void setBrand1(ViaBrandTrackerBenchmark.Cursor cursor) {
+        setBrand(cursor);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void setBrand4(ViaBrandTrackerBenchmark.Cursor cursor) {
+        setBrand(cursor);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public void setBrand16(ViaBrandTrackerBenchmark.Cursor cursor) {
+        setBrand(cursor);
+    }
+
+    @Benchmark
+    @Threads(64)
+    public void setBrand64(ViaBrandTrackerBenchmark.Cursor cursor) {
+        setBrand(cursor);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void setModList1(ViaBrandTrackerBenchmark.Cursor cursor) {
+        setModList(cursor);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void setModList4(ViaBrandTrackerBenchmark.Cursor cursor) {
+        setModList(cursor);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public void setModList16(ViaBrandTrackerBenchmark.Cursor cursor) {
+        setModList(cursor);
+    }
+
+    @Benchmark
+    @Threads(64)
+    public void setModList64(ViaBrandTrackerBenchmark.Cursor cursor) {
+        setModList(cursor);
+    }
+
+    private boolean lookup(ViaBrandTrackerBenchmark.Cursor cursor) {
+        return ViaBrandTracker.shouldUseLegacyParticles(this.table.channels[cursor.advance(this.clients)]);
+    }
+
+    private void setBrand(ViaBrandTrackerBenchmark.Cursor cursor) {
+        int index = cursor.advance(this.clients);
+        ViaBrandTracker.setBrand(
+            this.table.connections[index],
+            this.table.channels[index],
+            BenchmarkClients.BRANDS[(index + cursor.next) % BenchmarkClients.BRANDS.length]
+        );
+    }
+
+    private void setModList(ViaBrandTrackerBenchmark.Cursor cursor) {
+        int index = cursor.advance(this.clients);
+        ViaBrandTracker.setClientModList(
+            this.table.connections[index],
+            this.table.channels[index],
+            this.table.modLists.get((index + cursor.next) % this.table.modLists.size())
+        );
+    }
+}
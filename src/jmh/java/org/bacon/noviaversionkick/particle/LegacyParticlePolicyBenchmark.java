@@ -0,0 +1,61 @@
+package org.bacon.noviaversionkick.particle;
+
+import io.netty.buffer.Unpooled;
+import net.minecraft.block.Blocks;
+import net.minecraft.network.RegistryByteBuf;
+import net.minecraft.particle.BlockStateParticleEffect;
+import net.minecraft.particle.ParticleEffect;
+import net.minecraft.particle.ParticleTypes;
+import org.bacon.noviaversionkick.BenchmarkBootstrap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Legacy paths driven by the particle policy table: a {@code falling_*} type
+ * replaced by the substitute, and a block-state particle snapped to a block face.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LegacyParticlePolicyBenchmark {
+    private RegistryByteBuf buf;
+    private ParticleEffect fallingDust;
+    private ParticleEffect blockState;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        this.buf = new RegistryByteBuf(Unpooled.buffer(512), BenchmarkBootstrap.registries());
+        ParticlePolicyTable.rebuild();
+        this.fallingDust = new BlockStateParticleEffect(ParticleTypes.FALLING_DUST, Blocks.SAND.getDefaultState());
+        this.blockState = new BlockStateParticleEffect(ParticleTypes.BLOCK, Blocks.STONE.getDefaultState());
+    }
+
+    @Benchmark
+    public int suppressed() {
+        this.buf.clear();
+        LegacyParticleWriter.write(this.buf, this.fallingDust, false, 10.5D, 64.0D, -3.25D, 0.2F, 0.2F, 0.2F, 0.05F, 12);
+        return this.buf.writerIndex();
+    }
+
+    @Benchmark
+    public int surfaceAligned() {
+        this.buf.clear();
+        // 0.1 from the block face on X, so the position is snapped.
+        LegacyParticleWriter.write(this.buf, this.blockState, false, 10.9D, 64.45D, -3.5D, 0.2F, 0.2F, 0.2F, 0.05F, 12);
+        return this.buf.writerIndex();
+    }
+}
@@ -0,0 +1,105 @@
+package org.bacon.noviaversionkick.particle;
+
+import io.netty.buffer.Unpooled;
+import net.minecraft.block.Blocks;
+import net.minecraft.item.ItemStack;
+import net.minecraft.item.Items;
+import net.minecraft.network.RegistryByteBuf;
+import net.minecraft.network.packet.s2c.play.ParticleS2CPacket;
+import net.minecraft.particle.BlockStateParticleEffect;
+import net.minecraft.particle.DustParticleEffect;
+import net.minecraft.particle.ItemStackParticleEffect;
+import net.minecraft.particle.ParticleEffect;
+import net.minecraft.particle.ParticleTypes;
+import org.bacon.noviaversionkick.BenchmarkBootstrap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of writing one particle packet body through the modern (vanilla) and
+ * legacy paths for a mix of effect types. The suppressed and surface-aligned
+ * legacy paths are covered by {@link LegacyParticlePolicyBenchmark}. Run through
+ * {@code ./gradlew jmh}, which attaches the GC profiler for bytes allocated per
+ * op.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParticleWriteBenchmark {
+    @Param({"simple", "dust", "block", "item"})
+    public String effect;
+
+    private RegistryByteBuf buf;
+    private ParticleEffect parameters;
+    private ParticleS2CPacket packet;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        this.buf = new RegistryByteBuf(Unpooled.buffer(512), BenchmarkBootstrap.registries());
+        ParticlePolicyTable.rebuild();
+        this.parameters = switch (this.effect) {
+            case "simple" -> ParticleTypes.FLAME;
+            case "dust" -> new DustParticleEffect(0xFF3355, 1.5F);
+            case "block" -> new BlockStateParticleEffect(ParticleTypes.BLOCK, Blocks.STONE.getDefaultState());
+            case "item" -> new ItemStackParticleEffect(
+                ParticleTypes.ITEM,
+                new ItemStack(Items.DIAMOND)
+            );
+            default -> throw new IllegalArgumentException(this.effect);
+        };
+        this.packet = new ParticleS2CPacket(
+            this.parameters,
+            false,
+            false,
+            10.5D,
+            64.0D,
+            -3.25D,
+            0.2F,
+            0.2F,
+            0.2F,
+            0.05F,
+            12
+        );
+    }
+
+    @Benchmark
+    public int modern() {
+        this.buf.clear();
+        ParticleS2CPacket.CODEC.encode(this.buf, this.packet);
+        return this.buf.writerIndex();
+    }
+
+    @Benchmark
+    public int legacy() {
+        this.buf.clear();
+        LegacyParticleWriter.write(
+            this.buf,
+            this.parameters,
+            false,
+            10.5D,
+            64.0D,
+            -3.25D,
+            0.2F,
+            0.2F,
+            0.2F,
+            0.05F,
+            12
+        );
+        return this.buf.writerIndex();
+    }
+}
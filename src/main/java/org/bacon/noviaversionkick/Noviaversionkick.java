@@ -1,32 +1,74 @@
 package org.bacon.noviaversionkick;
 
 import net.fabricmc.api.ModInitializer;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerTickEvents;
+import net.fabricmc.fabric.api.networking.v1.ServerConfigurationConnectionEvents;
 import net.fabricmc.fabric.api.networking.v1.ServerLoginNetworking;
-import net.fabricmc.fabric.api.networking.v1.PacketByteBufs;
 import net.fabricmc.fabric.api.networking.v1.PacketSender;
+import net.fabricmc.loader.api.FabricLoader;
 import net.minecraft.network.ClientConnection;
 import net.minecraft.network.PacketByteBuf;
 import net.minecraft.server.MinecraftServer;
 import net.minecraft.server.network.ServerLoginNetworkHandler;
 import net.minecraft.util.Identifier;
-import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.bacon.noviaversionkick.config.NoviaversionkickConfig;
+import org.bacon.noviaversionkick.log.ModLogger;
+import org.bacon.noviaversionkick.mixin.ServerCommonNetworkHandlerAccessor;
 import org.bacon.noviaversionkick.mixin.ServerLoginNetworkHandlerAccessor;
+import org.bacon.noviaversionkick.network.ClientFingerprintStore;
+import org.bacon.noviaversionkick.network.ClientRules;
+import org.bacon.noviaversionkick.network.FabricModListParser;
+import org.bacon.noviaversionkick.network.LoginParseBudget;
 import org.bacon.noviaversionkick.network.ViaBrandTracker;
+import org.bacon.noviaversionkick.particle.ParticleCoalescer;
+import org.bacon.noviaversionkick.particle.ParticleDegradation;
+import org.bacon.noviaversionkick.particle.ParticleMetrics;
+import org.bacon.noviaversionkick.particle.ParticlePolicyTable;
+import org.bacon.noviaversionkick.particle.RecipientView;
+import org.bacon.noviaversionkick.particle.ServerTickClock;
 
-import java.util.ArrayList;
-import java.util.HashSet;
+import java.net.SocketAddress;
 import java.util.List;
-import java.util.Locale;
-import java.util.Set;
 
 public class Noviaversionkick implements ModInitializer {
-    private static final Logger LOGGER = LogManager.getLogger("Noviaversionkick");
+    private static final Logger LOGGER = ModLogger.get();
     private static final Identifier FABRIC_MOD_LIST_CHANNEL = Identifier.of("fabric", "mod_list");
     private static final Identifier FABRIC_MODLIST_LEGACY_CHANNEL = Identifier.of("fabric", "modlist");
+    private static final String FINGERPRINT_FILE = "noviaversionkick/fingerprints.bin";
 
     @Override
     public void onInitialize() {
+        NoviaversionkickConfig.load();
+        ClientRules.rebuild();
+        ParticleMetrics.register();
+        ServerLifecycleEvents.SERVER_STARTING.register(server -> {
+            ParticlePolicyTable.rebuild();
+            ParticleCoalescer.bindServerThread(Thread.currentThread());
+            NoviaversionkickConfig config = NoviaversionkickConfig.get();
+            if (config.fingerprintsEnabled) {
+                ClientFingerprintStore.open(FabricLoader.getInstance().getGameDir().resolve(FINGERPRINT_FILE), config.fingerprintSlots);
+            }
+        });
+        ServerLifecycleEvents.SERVER_STOPPED.register(server -> {
+            ParticleCoalescer.clear();
+            ClientFingerprintStore.close();
+        });
+        ServerConfigurationConnectionEvents.BEFORE_CONFIGURE.register((handler, server) -> {
+            ServerCommonNetworkHandlerAccessor accessor = (ServerCommonNetworkHandlerAccessor) handler;
+            ViaBrandTracker.preseed(accessor.noviaversionkick$getConnection(), accessor.noviaversionkick$getProfile().id());
+        });
+        ServerTickEvents.START_SERVER_TICK.register(server -> ParticleDegradation.startTick());
+        ServerTickEvents.END_SERVER_TICK.register(server -> {
+            NoviaversionkickConfig config = NoviaversionkickConfig.get();
+            if (config.lodEnabled || config.viewCullingEnabled) {
+                RecipientView.capture(server);
+            }
+            ParticleCoalescer.flush();
+            ServerTickClock.advance();
+            ParticleDegradation.endTick();
+        });
         registerFabricModListReceiver(FABRIC_MOD_LIST_CHANNEL);
         registerFabricModListReceiver(FABRIC_MODLIST_LEGACY_CHANNEL);
     }
@@ -41,84 +83,32 @@ public class Noviaversionkick implements ModInitializer {
                 return;
             }
 
-            PacketByteBuf duplicate = PacketByteBufs.copy(buf);
-            try {
-                List<String> modIds = parseModListPayload(duplicate);
-                if (modIds.isEmpty()) {
-                    LOGGER.debug("Received empty or unparseable Fabric mod list from {} on channel {}", describeConnection(connection), channel);
-                    ViaBrandTracker.setClientModList(connection, null);
-                    return;
-                }
-                ViaBrandTracker.setClientModList(connection, modIds);
-            } catch (Throwable throwable) {
-                LOGGER.error("Failed to parse Fabric mod list payload from {} on channel {}", describeConnection(connection), channel, throwable);
+            NoviaversionkickConfig config = NoviaversionkickConfig.get();
+            if (buf.readableBytes() > config.modListMaxPayloadBytes) {
+                LOGGER.debug("Ignoring {} byte Fabric mod list from {} on channel {}; limit is {}", buf.readableBytes(), describeConnection(connection), channel, config.modListMaxPayloadBytes);
                 ViaBrandTracker.setClientModList(connection, null);
-            } finally {
-                duplicate.release();
-            }
-        });
-    }
-
-    private static List<String> parseModListPayload(PacketByteBuf buf) {
-        List<String> modIds = new ArrayList<>();
-        buf.markReaderIndex();
-        try {
-            int handshakeVersion = buf.readVarInt();
-            if (handshakeVersion >= 0 && handshakeVersion <= 5) {
-                int modCount = buf.readVarInt();
-                for (int i = 0; i < modCount; i++) {
-                    String modId = buf.readString(Short.MAX_VALUE).trim();
-                    if (buf.isReadable()) {
-                        buf.readString(Short.MAX_VALUE);
-                    }
-                    if (!modId.isEmpty()) {
-                        modIds.add(modId.toLowerCase(Locale.ROOT));
-                    }
-                }
-                if (!modIds.isEmpty()) {
-                    return modIds;
-                }
-            }
-        } catch (Throwable ignored) {
-        }
-        buf.resetReaderIndex();
-
-        try {
-            int modCount = buf.readVarInt();
-            for (int i = 0; i < modCount; i++) {
-                String modId = buf.readString(Short.MAX_VALUE).trim();
-                if (!modId.isEmpty()) {
-                    modIds.add(modId.toLowerCase(Locale.ROOT));
-                }
-            }
-            if (!modIds.isEmpty()) {
-                return modIds;
+                return;
             }
-        } catch (Throwable ignored) {
-        }
-        buf.resetReaderIndex();
-
-        try {
-            Set<String> deduplicated = new HashSet<>();
-            while (buf.isReadable()) {
-                String modId = buf.readString(Short.MAX_VALUE).trim();
-                if (modId.isEmpty()) {
-                    break;
-                }
-                deduplicated.add(modId.toLowerCase(Locale.ROOT));
+            SocketAddress address = connection.getAddress();
+            if (!LoginParseBudget.tryAcquire(address)) {
+                LOGGER.debug("Skipping Fabric mod list from {} on channel {}; login parse budget for its address is used up", describeConnection(connection), channel);
+                ViaBrandTracker.setClientModList(connection, null);
+                return;
             }
-            if (!deduplicated.isEmpty()) {
-                modIds.addAll(deduplicated);
+            long started = LoginParseBudget.now();
+            List<String> modIds = FabricModListParser.parse(buf, config.modListMaxEntries, config.modListMaxIdLength);
+            if (modIds.isEmpty()) {
+                LOGGER.debug("Received empty or unparseable Fabric mod list from {} on channel {}", describeConnection(connection), channel);
+                ViaBrandTracker.setClientModList(connection, null);
+            } else {
+                ViaBrandTracker.setClientModList(connection, modIds);
             }
-        } catch (Throwable ignored) {
-        }
-        return modIds;
+            // Charged after the tracker update so normalising the ids counts too.
+            LoginParseBudget.charge(address, LoginParseBudget.now() - started);
+        });
     }
 
     private static String describeConnection(ClientConnection connection) {
-        if (connection == null) {
-            return "unknown";
-        }
-        return String.valueOf(connection.getAddress());
+        return ModLogger.describe(connection);
     }
 }
@@ -0,0 +1,343 @@
+package org.bacon.noviaversionkick.config;
+
+import net.fabricmc.loader.api.FabricLoader;
+import net.minecraft.util.Identifier;
+import org.apache.logging.log4j.Logger;
+import org.bacon.noviaversionkick.log.ModLogger;
+import org.bacon.noviaversionkick.network.ClientRule;
+import org.bacon.noviaversionkick.network.ParticleEncoding;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Immutable snapshot of {@code config/noviaversionkick.properties}. Missing keys
+ * fall back to their defaults; a file containing every default is written on
+ * first start.
+ */
+public final class NoviaversionkickConfig {
+    private static final Logger LOGGER = ModLogger.get();
+    private static final String FILE_NAME = "noviaversionkick.properties";
+    private static final String RULE_PREFIX = "rules.";
+    /** Reproduces the original hardcoded Fabric detection; used when the file defines no rules. */
+    private static final Properties DEFAULT_RULES = new Properties();
+    private static volatile NoviaversionkickConfig current;
+
+    static {
+        DEFAULT_RULES.setProperty("rules.fabric-brand.brand", "fabric");
+        DEFAULT_RULES.setProperty("rules.fabric-brand.encoding", "legacy");
+        DEFAULT_RULES.setProperty("rules.fabric-mods.modIdContains", "fabric");
+        DEFAULT_RULES.setProperty("rules.fabric-mods.encoding", "legacy");
+        current = new NoviaversionkickConfig(new Properties());
+    }
+
+    private final Map<String, String> resolved = new LinkedHashMap<>();
+
+    /** Log one in this many particle encodes at INFO; 0 disables sampling. */
+    public final int traceSampleRate;
+    /** Particle types never sent to legacy clients, e.g. {@code minecraft:dust_plume}. */
+    public final Set<Identifier> droppedParticles;
+    /** Hold world particles until the end of the tick and merge near-identical ones. */
+    public final boolean coalesceParticles;
+    /** Edge length in blocks of the cells particles are merged within. */
+    public final double coalesceCellSize;
+    /** Enforce per-connection particle bandwidth budgets. */
+    public final boolean budgetEnabled;
+    public final double budgetBytesPerSecond;
+    public final double budgetPacketsPerSecond;
+    /** Budgets applied instead to connections receiving legacy-encoded particles. */
+    public final double legacyBudgetBytesPerSecond;
+    public final double legacyBudgetPacketsPerSecond;
+    /** How many seconds of budget a bucket can bank for bursts. */
+    public final double budgetBurstSeconds;
+    /** Discard non-forced particles while a channel is above its write high-water mark. */
+    public final boolean dropParticlesWhenUnwritable;
+    /** Fabric mod list responses larger than this many bytes are ignored unread. */
+    public final int modListMaxPayloadBytes;
+    /** Mod lists claiming more entries than this are ignored. */
+    public final int modListMaxEntries;
+    /** Longest accepted encoded mod id, in bytes. */
+    public final int modListMaxIdLength;
+    /** CPU time one IP may spend parsing login payloads per window before further payloads are skipped. */
+    public final double loginParseCpuMillisPerIp;
+    public final double loginParseWindowSeconds;
+    /** Honour the particle setting clients report: drop for Minimal, thin for Decreased. */
+    public final boolean respectParticleStatus;
+    /** Fraction of {@code count} kept for clients on Decreased particles. */
+    public final double decreasedParticleFraction;
+    /** Scale particle counts down with the recipient's distance from the particle. */
+    public final boolean lodEnabled;
+    /** Within this many blocks particles keep their full count. */
+    public final double lodFullDistance;
+    /** Beyond this many blocks non-forced particles are not sent; vanilla already stops at 32. */
+    public final double lodCutoffDistance;
+    /** Beyond this many blocks forced particles are not sent either; vanilla sends them up to 512. */
+    public final double lodForcedCutoffDistance;
+    /** Exponent on {@code fullDistance² / distance²}; 1 is inverse-square falloff. */
+    public final double lodFalloff;
+    /** Smallest fraction of the count kept however far away the recipient is. */
+    public final double lodMinFraction;
+    /** Drop non-forced particles behind the recipient's view. */
+    public final boolean viewCullingEnabled;
+    /** Particles closer than this many blocks are never culled by view direction. */
+    public final double viewCullingNearRadius;
+    /** Cosine of the angle from the look vector beyond which particles count as behind; -0.3 is about 107 degrees. */
+    public final double viewCullingMinCos;
+    /** Drop particles repeating one already sent to the same connection within a few ticks. */
+    public final boolean duplicateFilterEnabled;
+    /** Ticks a sent particle is remembered for. */
+    public final int duplicateWindowTicks;
+    /** Cell size in blocks; particles of the same type in the same cell count as duplicates. */
+    public final double duplicateQuantum;
+    /** Memory reserved per connection for remembered particles. */
+    public final int duplicateMaxBytesPerConnection;
+    /** Degrade particle traffic step by step while the server is behind. */
+    public final boolean adaptiveEnabled;
+    /** Smoothed milliseconds per tick at which particle counts are thinned. */
+    public final double adaptiveDownsampleMspt;
+    /** Smoothed milliseconds per tick at which only forced particles are sent. */
+    public final double adaptiveForcedOnlyMspt;
+    /** Smoothed milliseconds per tick at which no particles are sent. */
+    public final double adaptiveNoneMspt;
+    /** A level is left only once tick time is this many milliseconds below its threshold. */
+    public final double adaptiveHysteresisMspt;
+    /** Ticks to stay at a level before stepping back down. */
+    public final int adaptiveRecoveryTicks;
+    /** Fraction of {@code count} kept while downsampled. */
+    public final double adaptiveDownsampleFraction;
+    /** Remember each player's last classification on disk and apply it before their brand arrives. */
+    public final boolean fingerprintsEnabled;
+    /** Players the fingerprint file can hold; rounded down to a power of two, fixed once the file exists. */
+    public final int fingerprintSlots;
+    /** Client classification rules, see {@link ClientRule}. */
+    public final List<ClientRule> clientRules;
+
+    private NoviaversionkickConfig(Properties properties) {
+        this.traceSampleRate = readInt(properties, "logging.traceSampleRate", 0, 0);
+        this.droppedParticles = readIdentifiers(properties, "legacy.droppedParticles", "");
+        this.coalesceParticles = readBoolean(properties, "coalescing.enabled", false);
+        this.coalesceCellSize = readDouble(properties, "coalescing.cellSize", 1.0D, 0.01D);
+        this.budgetEnabled = readBoolean(properties, "budget.enabled", false);
+        this.budgetBytesPerSecond = readDouble(properties, "budget.bytesPerSecond", 262144.0D, 0.0D);
+        this.budgetPacketsPerSecond = readDouble(properties, "budget.packetsPerSecond", 2000.0D, 0.0D);
+        this.legacyBudgetBytesPerSecond = readDouble(properties, "budget.legacy.bytesPerSecond", 65536.0D, 0.0D);
+        this.legacyBudgetPacketsPerSecond = readDouble(properties, "budget.legacy.packetsPerSecond", 500.0D, 0.0D);
+        this.budgetBurstSeconds = readDouble(properties, "budget.burstSeconds", 1.0D, 0.05D);
+        this.dropParticlesWhenUnwritable = readBoolean(properties, "backpressure.dropParticles", true);
+        this.modListMaxPayloadBytes = readInt(properties, "modList.maxPayloadBytes", 65536, 0);
+        this.modListMaxEntries = readInt(properties, "modList.maxEntries", 1024, 0);
+        this.modListMaxIdLength = readInt(properties, "modList.maxIdLength", 64, 1);
+        this.loginParseCpuMillisPerIp = readDouble(properties, "loginParse.cpuMillisPerIp", 20.0D, 0.0D);
+        this.loginParseWindowSeconds = readDouble(properties, "loginParse.windowSeconds", 10.0D, 1.0D);
+        this.respectParticleStatus = readBoolean(properties, "clientSettings.respectParticleStatus", true);
+        this.decreasedParticleFraction = Math.min(1.0D, readDouble(properties, "clientSettings.decreasedFraction", 0.5D, 0.0D));
+        this.lodEnabled = readBoolean(properties, "lod.enabled", false);
+        this.lodFullDistance = readDouble(properties, "lod.fullDistance", 16.0D, 1.0D);
+        this.lodCutoffDistance = Math.max(this.lodFullDistance, readDouble(properties, "lod.cutoffDistance", 24.0D, 0.0D));
+        double forcedCutoff = readDouble(properties, "lod.forcedCutoffDistance", 128.0D, 0.0D);
+        this.lodForcedCutoffDistance = Math.min(512.0D, Math.max(this.lodCutoffDistance, forcedCutoff));
+        this.lodFalloff = readDouble(properties, "lod.falloff", 1.0D, 0.0D);
+        this.lodMinFraction = Math.min(1.0D, readDouble(properties, "lod.minFraction", 0.05D, 0.0D));
+        this.viewCullingEnabled = readBoolean(properties, "viewCulling.enabled", false);
+        this.viewCullingNearRadius = readDouble(properties, "viewCulling.nearRadius", 8.0D, 0.0D);
+        this.viewCullingMinCos = Math.min(1.0D, readDouble(properties, "viewCulling.minCos", -0.3D, -1.0D));
+        this.duplicateFilterEnabled = readBoolean(properties, "duplicates.enabled", false);
+        this.duplicateWindowTicks = Math.min(64, readInt(properties, "duplicates.windowTicks", 4, 1));
+        this.duplicateQuantum = readDouble(properties, "duplicates.quantum", 0.25D, 0.001D);
+        this.duplicateMaxBytesPerConnection = readInt(properties, "duplicates.maxBytesPerConnection", 16384, 512);
+        this.adaptiveEnabled = readBoolean(properties, "adaptive.enabled", false);
+        this.adaptiveDownsampleMspt = readDouble(properties, "adaptive.downsampleMspt", 50.0D, 1.0D);
+        this.adaptiveForcedOnlyMspt = Math.max(this.adaptiveDownsampleMspt, readDouble(properties, "adaptive.forcedOnlyMspt", 60.0D, 1.0D));
+        this.adaptiveNoneMspt = Math.max(this.adaptiveForcedOnlyMspt, readDouble(properties, "adaptive.noneMspt", 80.0D, 1.0D));
+        this.adaptiveHysteresisMspt = Math.min(this.adaptiveDownsampleMspt / 2.0D, readDouble(properties, "adaptive.hysteresisMspt", 5.0D, 0.0D));
+        this.adaptiveRecoveryTicks = readInt(properties, "adaptive.recoveryTicks", 100, 0);
+        this.adaptiveDownsampleFraction = Math.min(1.0D, readDouble(properties, "adaptive.downsampleFraction", 0.5D, 0.0D));
+        this.fingerprintsEnabled = readBoolean(properties, "fingerprints.enabled", true);
+        this.fingerprintSlots = readInt(properties, "fingerprints.slots", 65536, 1024);
+        this.clientRules = readRules(properties);
+    }
+
+    public static NoviaversionkickConfig get() {
+        return current;
+    }
+
+    public static void load() {
+        Path path = FabricLoader.getInstance().getConfigDir().resolve(FILE_NAME);
+        Properties properties = new Properties();
+        boolean exists = Files.exists(path);
+        if (exists) {
+            try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+                properties.load(reader);
+            } catch (IOException | IllegalArgumentException exception) {
+                LOGGER.warn("Failed to read {}; using defaults", path, exception);
+            }
+        }
+        NoviaversionkickConfig config = new NoviaversionkickConfig(properties);
+        current = config;
+        if (!exists) {
+            config.writeDefaults(path);
+        }
+    }
+
+    private void writeDefaults(Path path) {
+        try {
+            Files.createDirectories(path.getParent());
+            try (Writer writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+                writer.write("# NoViaVersionKick settings. Delete this file to regenerate defaults.\n");
+                for (Map.Entry<String, String> entry : this.resolved.entrySet()) {
+                    writer.write(entry.getKey() + "=" + entry.getValue() + "\n");
+                }
+            }
+        } catch (IOException exception) {
+            LOGGER.warn("Failed to write default config to {}", path, exception);
+        }
+    }
+
+    private String readString(Properties properties, String key, String defaultValue) {
+        String value = properties.getProperty(key);
+        String result = value == null ? defaultValue : value.trim();
+        this.resolved.put(key, result);
+        return result;
+    }
+
+    private boolean readBoolean(Properties properties, String key, boolean defaultValue) {
+        return Boolean.parseBoolean(readString(properties, key, Boolean.toString(defaultValue)));
+    }
+
+    private double readDouble(Properties properties, String key, double defaultValue, double min) {
+        String value = readString(properties, key, Double.toString(defaultValue));
+        try {
+            return Math.max(min, Double.parseDouble(value));
+        } catch (NumberFormatException exception) {
+            LOGGER.warn("Invalid number '{}' for {}; using {}", value, key, defaultValue);
+            this.resolved.put(key, Double.toString(defaultValue));
+            return defaultValue;
+        }
+    }
+
+    private Set<Identifier> readIdentifiers(Properties properties, String key, String defaultValue) {
+        Set<Identifier> identifiers = new LinkedHashSet<>();
+        for (String entry : readString(properties, key, defaultValue).split(",")) {
+            String trimmed = entry.trim();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            Identifier identifier = Identifier.tryParse(trimmed);
+            if (identifier == null) {
+                LOGGER.warn("Ignoring invalid identifier '{}' in {}", trimmed, key);
+                continue;
+            }
+            identifiers.add(identifier);
+        }
+        return Set.copyOf(identifiers);
+    }
+
+    private List<ClientRule> readRules(Properties properties) {
+        Set<String> names = new TreeSet<>();
+        for (String key : properties.stringPropertyNames()) {
+            if (key.startsWith(RULE_PREFIX) && key.indexOf('.', RULE_PREFIX.length()) > RULE_PREFIX.length()) {
+                names.add(key.substring(RULE_PREFIX.length(), key.indexOf('.', RULE_PREFIX.length())));
+            }
+        }
+        Properties source = properties;
+        if (names.isEmpty()) {
+            source = DEFAULT_RULES;
+            for (String key : DEFAULT_RULES.stringPropertyNames()) {
+                names.add(key.substring(RULE_PREFIX.length(), key.indexOf('.', RULE_PREFIX.length())));
+            }
+        }
+        List<ClientRule> rules = new ArrayList<>();
+        for (String name : names) {
+            String prefix = RULE_PREFIX + name + ".";
+            String encodingValue = readString(source, prefix + "encoding", "legacy");
+            ParticleEncoding encoding;
+            try {
+                encoding = ParticleEncoding.valueOf(encodingValue.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException exception) {
+                LOGGER.warn("Ignoring client rule '{}': unknown encoding '{}'", name, encodingValue);
+                continue;
+            }
+            int priority = readInt(source, prefix + "priority", 0, Integer.MIN_VALUE);
+            List<String> brandContains = readPatterns(source, prefix + "brand");
+            List<String> modIdContains = readPatterns(source, prefix + "modIdContains");
+            String regex = source.getProperty(prefix + "brandRegex");
+            Pattern brandRegex = null;
+            if (regex != null && !regex.isBlank()) {
+                try {
+                    brandRegex = Pattern.compile(regex.trim());
+                    this.resolved.put(prefix + "brandRegex", regex.trim());
+                } catch (PatternSyntaxException exception) {
+                    LOGGER.warn("Ignoring client rule '{}': invalid brandRegex '{}'", name, regex);
+                    continue;
+                }
+            }
+            rules.add(new ClientRule(
+                name,
+                priority,
+                encoding,
+                brandContains,
+                brandRegex,
+                modIdContains,
+                readModIds(source, prefix + "modsRequired"),
+                readModIds(source, prefix + "modsForbidden")
+            ));
+        }
+        return List.copyOf(rules);
+    }
+
+    private List<String> readPatterns(Properties properties, String key) {
+        String value = properties.getProperty(key);
+        if (value == null) {
+            return List.of();
+        }
+        List<String> patterns = new ArrayList<>();
+        for (String entry : readString(properties, key, "").split(",")) {
+            String trimmed = entry.trim().toLowerCase(Locale.ROOT);
+            if (!trimmed.isEmpty()) {
+                patterns.add(trimmed);
+            }
+        }
+        return List.copyOf(patterns);
+    }
+
+    private Set<String> readModIds(Properties properties, String key) {
+        String value = properties.getProperty(key);
+        if (value == null) {
+            return Set.of();
+        }
+        Set<String> ids = new LinkedHashSet<>();
+        for (String entry : readString(properties, key, "").split(",")) {
+            String trimmed = entry.trim().toLowerCase(Locale.ROOT);
+            if (!trimmed.isEmpty()) {
+                ids.add(trimmed);
+            }
+        }
+        return Set.copyOf(ids);
+    }
+
+    private int readInt(Properties properties, String key, int defaultValue, int min) {
+        String value = readString(properties, key, Integer.toString(defaultValue));
+        try {
+            return Math.max(min, Integer.parseInt(value));
+        } catch (NumberFormatException exception) {
+            LOGGER.warn("Invalid integer '{}' for {}; using {}", value, key, defaultValue);
+            this.resolved.put(key, Integer.toString(defaultValue));
+            return defaultValue;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package org.bacon.noviaversionkick.log;
+
+import io.netty.channel.Channel;
+import io.netty.util.Attribute;
+import io.netty.util.AttributeKey;
+import net.minecraft.network.ClientConnection;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.bacon.noviaversionkick.config.NoviaversionkickConfig;
+import org.bacon.noviaversionkick.mixin.ClientConnectionAccessor;
+
+import java.net.SocketAddress;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Logging facade for the mod. Callers on hot paths check {@link #isDebugEnabled()}
+ * before building messages, connection labels are computed once per channel, and
+ * {@link #sampleTrace()} lets production servers at INFO see one in N events.
+ */
+public final class ModLogger {
+    private static final Logger LOGGER = LogManager.getLogger("Noviaversionkick");
+    private static final AttributeKey<String> LABEL = AttributeKey.valueOf("noviaversionkick:label");
+
+    private ModLogger() {
+    }
+
+    public static Logger get() {
+        return LOGGER;
+    }
+
+    public static boolean isDebugEnabled() {
+        return LOGGER.isDebugEnabled();
+    }
+
+    /**
+     * Returns true for roughly one call in {@code logging.traceSampleRate}.
+     */
+    public static boolean sampleTrace() {
+        int rate = NoviaversionkickConfig.get().traceSampleRate;
+        return rate > 0 && (rate == 1 || ThreadLocalRandom.current().nextInt(rate) == 0);
+    }
+
+    public static void trace(String message, Object... parameters) {
+        LOGGER.info("[trace] " + message, parameters);
+    }
+
+    public static String describe(ClientConnection connection) {
+        if (connection == null) {
+            return "unknown";
+        }
+        // Connections seen outside a mixin environment (benchmarks) have no accessor.
+        Channel channel = connection instanceof ClientConnectionAccessor accessor ? accessor.noviaversionkick$getChannel() : null;
+        if (channel == null) {
+            return describeAddress(connection.getAddress());
+        }
+        return describe(channel);
+    }
+
+    public static String describe(Channel channel) {
+        Attribute<String> attribute = channel.attr(LABEL);
+        String label = attribute.get();
+        if (label == null) {
+            SocketAddress address = channel.remoteAddress();
+            if (address == null) {
+                // Not connected yet; do not cache a placeholder.
+                return "unknown";
+            }
+            label = address.toString();
+            attribute.set(label);
+        }
+        return label;
+    }
+
+    private static String describeAddress(SocketAddress address) {
+        return address != null ? address.toString() : "unknown";
+    }
+}
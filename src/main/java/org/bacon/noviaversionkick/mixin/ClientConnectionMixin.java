@@ -1,9 +1,11 @@
 package org.bacon.noviaversionkick.mixin;
 
-import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPipeline;
 import net.minecraft.network.ClientConnection;
-import net.minecraft.network.packet.Packet;
-import org.bacon.noviaversionkick.network.PacketConnectionAttachment;
+import org.bacon.noviaversionkick.network.ParticleEncodingHandler;
+import org.bacon.noviaversionkick.network.ViaBrandTracker;
+import org.bacon.noviaversionkick.particle.ParticleDropCounters;
 import org.spongepowered.asm.mixin.Mixin;
 import org.spongepowered.asm.mixin.injection.At;
 import org.spongepowered.asm.mixin.injection.Inject;
@@ -11,17 +13,19 @@ import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
 
 @Mixin(ClientConnection.class)
 public abstract class ClientConnectionMixin {
-    @Inject(method = "sendInternal(Lnet/minecraft/network/packet/Packet;Lio/netty/channel/ChannelFutureListener;Z)V", at = @At("HEAD"))
-    private void noviaversionkick$tagConnection(Packet<?> packet, ChannelFutureListener listener, boolean flush, CallbackInfo ci) {
-        if (packet instanceof PacketConnectionAttachment attachment) {
-            attachment.noviaversionkick$setConnection((ClientConnection) (Object) this);
+    @Inject(method = "channelActive", at = @At("TAIL"))
+    private void noviaversionkick$installParticleHandler(ChannelHandlerContext context, CallbackInfo ci) {
+        ChannelPipeline pipeline = context.pipeline();
+        if (pipeline.get(ParticleEncodingHandler.NAME) == null) {
+            // Outbound messages travel from this handler towards the encoder, so the
+            // particle stage sits directly in front of it.
+            pipeline.addBefore(context.name(), ParticleEncodingHandler.NAME, new ParticleEncodingHandler());
         }
     }
 
-    @Inject(method = "sendInternal(Lnet/minecraft/network/packet/Packet;Lio/netty/channel/ChannelFutureListener;Z)V", at = @At("TAIL"))
-    private void noviaversionkick$clearConnection(Packet<?> packet, ChannelFutureListener listener, boolean flush, CallbackInfo ci) {
-        if (packet instanceof PacketConnectionAttachment attachment) {
-            attachment.noviaversionkick$setConnection(null);
-        }
+    @Inject(method = "channelInactive", at = @At("HEAD"))
+    private void noviaversionkick$forgetClient(ChannelHandlerContext context, CallbackInfo ci) {
+        ViaBrandTracker.removeClient((ClientConnection) (Object) this);
+        ParticleDropCounters.forget(context.channel());
     }
 }
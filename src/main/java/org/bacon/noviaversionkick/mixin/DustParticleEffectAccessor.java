@@ -0,0 +1,11 @@
+package org.bacon.noviaversionkick.mixin;
+
+import net.minecraft.particle.DustParticleEffect;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.gen.Accessor;
+
+@Mixin(DustParticleEffect.class)
+public interface DustParticleEffectAccessor {
+    @Accessor("color")
+    int noviaversionkick$getColor();
+}
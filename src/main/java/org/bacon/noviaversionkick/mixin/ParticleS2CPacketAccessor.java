@@ -0,0 +1,42 @@
+package org.bacon.noviaversionkick.mixin;
+
+import net.minecraft.network.packet.s2c.play.ParticleS2CPacket;
+import net.minecraft.particle.ParticleEffect;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.gen.Accessor;
+
+@Mixin(ParticleS2CPacket.class)
+public interface ParticleS2CPacketAccessor {
+    @Accessor("x")
+    double noviaversionkick$getX();
+
+    @Accessor("y")
+    double noviaversionkick$getY();
+
+    @Accessor("z")
+    double noviaversionkick$getZ();
+
+    @Accessor("offsetX")
+    float noviaversionkick$getOffsetX();
+
+    @Accessor("offsetY")
+    float noviaversionkick$getOffsetY();
+
+    @Accessor("offsetZ")
+    float noviaversionkick$getOffsetZ();
+
+    @Accessor("speed")
+    float noviaversionkick$getSpeed();
+
+    @Accessor("count")
+    int noviaversionkick$getCount();
+
+    @Accessor("forceSpawn")
+    boolean noviaversionkick$isForceSpawn();
+
+    @Accessor("important")
+    boolean noviaversionkick$isImportant();
+
+    @Accessor("parameters")
+    ParticleEffect noviaversionkick$getParameters();
+}
@@ -1,27 +1,31 @@
 package org.bacon.noviaversionkick.mixin;
 
-import net.minecraft.network.ClientConnection;
 import net.minecraft.network.RegistryByteBuf;
+import net.minecraft.network.codec.PacketCodec;
 import net.minecraft.network.packet.s2c.play.ParticleS2CPacket;
-import io.netty.buffer.ByteBuf;
-import io.netty.buffer.Unpooled;
-import net.minecraft.particle.BlockStateParticleEffect;
 import net.minecraft.particle.ParticleEffect;
-import net.minecraft.particle.ParticleTypes;
 import net.minecraft.registry.Registries;
-import org.bacon.noviaversionkick.network.PacketConnectionAttachment;
+import org.bacon.noviaversionkick.log.ModLogger;
+import org.bacon.noviaversionkick.network.ParticleEncoding;
+import org.bacon.noviaversionkick.network.ParticleEncodingHandler;
 import org.bacon.noviaversionkick.network.ViaBrandTracker;
+import org.bacon.noviaversionkick.particle.LegacyParticleWriter;
+import org.bacon.noviaversionkick.particle.ParticleEncodingCache;
+import org.bacon.noviaversionkick.particle.ParticlePacketCodec;
 import org.spongepowered.asm.mixin.Final;
 import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Mutable;
 import org.spongepowered.asm.mixin.Shadow;
 import org.spongepowered.asm.mixin.Unique;
 import org.spongepowered.asm.mixin.injection.At;
 import org.spongepowered.asm.mixin.injection.Inject;
 import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
-import net.minecraft.util.Identifier;
 
 @Mixin(ParticleS2CPacket.class)
-public abstract class ParticleS2CPacketMixin implements PacketConnectionAttachment {
+public abstract class ParticleS2CPacketMixin implements ParticleEncodingCache {
+    @Final
+    @Mutable
+    @Shadow public static PacketCodec<RegistryByteBuf, ParticleS2CPacket> CODEC;
     @Final
     @Shadow private double x;
     @Final
@@ -42,121 +46,119 @@ public abstract class ParticleS2CPacketMixin implements PacketConnectionAttachme
     @Shadow private boolean forceSpawn;
     @Final
     @Shadow private ParticleEffect parameters;
-    @Unique private ClientConnection noviaversionkick$connection;
-    @Unique private static final double noviaversionkick$SURFACE_THRESHOLD = 0.3D;
-    @Unique private static final double noviaversionkick$AXIS_EPSILON = 1.0E-6D;
-
-    @Override
-    public void noviaversionkick$setConnection(ClientConnection connection) {
-        this.noviaversionkick$connection = connection;
-    }
+    /** Body offset of {@code count}: two flags, three doubles, four floats. */
+    @Unique private static final int NOVIAVERSIONKICK$MODERN_COUNT_OFFSET = 42;
+    /** Body offset of {@code count} after the legacy type id: one flag, three doubles, four floats. */
+    @Unique private static final int NOVIAVERSIONKICK$LEGACY_COUNT_OFFSET = 41;
+    @Unique private volatile boolean noviaversionkick$modernEncoded;
+    @Unique private volatile boolean noviaversionkick$legacyEncoded;
+    @Unique private volatile byte[] noviaversionkick$modernBytes;
+    @Unique private volatile byte[] noviaversionkick$legacyBytes;
 
     @Override
-    public ClientConnection noviaversionkick$getConnection() {
-        return this.noviaversionkick$connection;
+    public int noviaversionkick$cachedSize(boolean legacy) {
+        byte[] cached = legacy ? this.noviaversionkick$legacyBytes : this.noviaversionkick$modernBytes;
+        return cached == null ? -1 : cached.length;
     }
 
-    @Inject(method = "write", at = @At("HEAD"), cancellable = true)
-    private void noviaversionkick$writeLegacyWhenNeeded(RegistryByteBuf buf, CallbackInfo ci) {
-        ClientConnection connection = this.noviaversionkick$getConnection();
-        if (ViaBrandTracker.shouldUseLegacyParticles(connection)) {
-            noviaversionkick$writeLegacy(buf);
-            ci.cancel();
-        }
+    /**
+     * Swapping the codec once keeps the hook off every other packet and avoids the
+     * per-call objects an injector on {@code write} would create.
+     */
+    @Inject(method = "<clinit>", at = @At("TAIL"))
+    private static void noviaversionkick$wrapCodec(CallbackInfo ci) {
+        CODEC = new ParticlePacketCodec(CODEC);
     }
 
-    private void noviaversionkick$writeLegacy(RegistryByteBuf buf) {
-        ParticleEffect effect = this.parameters;
-        if (effect == null) {
-            return;
+    @Override
+    public void noviaversionkick$encode(RegistryByteBuf buf, PacketCodec<RegistryByteBuf, ParticleS2CPacket> vanilla) {
+        // Usually nobody online needs legacy or thinned particles; skip the per-channel lookup then.
+        ParticleEncodingHandler handler = ViaBrandTracker.hasLegacyConnections() || ParticleEncodingHandler.thinningPossible()
+            ? ParticleEncodingHandler.active()
+            : null;
+        boolean legacy = handler != null && handler.encoding() == ParticleEncoding.LEGACY;
+        if (ModLogger.sampleTrace()) {
+            ModLogger.trace(
+                "Encoding {} particle packet ({}) for {}",
+                legacy ? "legacy" : "modern",
+                this.parameters == null ? null : Registries.PARTICLE_TYPE.getId(this.parameters.getType()),
+                handler == null ? "unknown" : ModLogger.describe(handler.channel())
+            );
         }
-        if (noviaversionkick$shouldSuppress(effect)) {
-            noviaversionkick$writeSuppressed(buf);
-            return;
+        int start = buf.writerIndex();
+        byte[] cached = legacy ? this.noviaversionkick$legacyBytes : this.noviaversionkick$modernBytes;
+        if (cached != null) {
+            buf.writeBytes(cached);
+        } else {
+            if (legacy) {
+                noviaversionkick$writeLegacy(buf);
+            } else {
+                vanilla.encode(buf, (ParticleS2CPacket) (Object) this);
+            }
+            noviaversionkick$rememberEncoding(buf, start, legacy);
         }
-        ByteBuf backing = Unpooled.buffer();
-        try {
-            RegistryByteBuf encoded = new RegistryByteBuf(backing, buf.getRegistryManager());
-            ParticleTypes.PACKET_CODEC.encode(encoded, effect);
-            int particleTypeId = Registries.PARTICLE_TYPE.getRawId(effect.getType());
-            buf.writeVarInt(particleTypeId);
-            buf.writeBoolean(this.forceSpawn);
-            noviaversionkick$writeAlignedPosition(buf, effect);
-            buf.writeFloat(this.offsetX);
-            buf.writeFloat(this.offsetY);
-            buf.writeFloat(this.offsetZ);
-            buf.writeFloat(this.speed);
-            buf.writeInt(this.count);
-
-            encoded.readerIndex(0);
-            buf.writeBytes(encoded);
-        } finally {
-            backing.release();
+        int countOverride = handler == null ? -1 : handler.countOverride((ParticleS2CPacket) (Object) this);
+        if (countOverride >= 0) {
+            // Patched after caching so the shared bytes keep the real count.
+            noviaversionkick$patchCount(buf, start, legacy, countOverride);
         }
     }
 
     @Unique
-    private boolean noviaversionkick$shouldSuppress(ParticleEffect effect) {
-        Identifier id = Registries.PARTICLE_TYPE.getId(effect.getType());
-        if (id == null) {
-            return false;
+    private static void noviaversionkick$patchCount(RegistryByteBuf buf, int start, boolean legacy, int count) {
+        int offset = start + NOVIAVERSIONKICK$MODERN_COUNT_OFFSET;
+        if (legacy) {
+            int idBytes = 1;
+            while ((buf.getByte(start + idBytes - 1) & 0x80) != 0) {
+                idBytes++;
+            }
+            offset = start + idBytes + NOVIAVERSIONKICK$LEGACY_COUNT_OFFSET;
+            if (buf.getInt(offset) == 0) {
+                // Suppressed placeholder; its zero count must stay.
+                return;
+            }
         }
-        return id.getPath().startsWith("falling_");
+        buf.setInt(offset, count);
     }
 
+    /**
+     * Keeps a copy of the encoded body once a second connection asks for the same
+     * variant, so the rest of a broadcast skips the particle codec entirely. Races
+     * between event loops only ever store identical bytes.
+     */
     @Unique
-    private void noviaversionkick$writeSuppressed(RegistryByteBuf buf) {
-        int fallbackId = Registries.PARTICLE_TYPE.getRawId(ParticleTypes.POOF);
-        buf.writeVarInt(fallbackId);
-        buf.writeBoolean(false);
-        buf.writeDouble(this.x);
-        buf.writeDouble(this.y);
-        buf.writeDouble(this.z);
-        buf.writeFloat(0.0F);
-        buf.writeFloat(0.0F);
-        buf.writeFloat(0.0F);
-        buf.writeFloat(0.0F);
-        buf.writeInt(0);
-    }
-
-    @Unique
-    private void noviaversionkick$writeAlignedPosition(RegistryByteBuf buf, ParticleEffect effect) {
-        if (!(effect instanceof BlockStateParticleEffect)) {
-            buf.writeDouble(this.x);
-            buf.writeDouble(this.y);
-            buf.writeDouble(this.z);
-            return;
-        }
-
-        double posX = this.x;
-        double posY = this.y;
-        double posZ = this.z;
-
-        double baseX = Math.floor(posX);
-        double baseY = Math.floor(posY);
-        double baseZ = Math.floor(posZ);
-
-        double fractionalX = posX - baseX;
-        double fractionalY = posY - baseY;
-        double fractionalZ = posZ - baseZ;
-
-        double distanceX = Math.min(fractionalX, 1.0D - fractionalX);
-        double distanceY = Math.min(fractionalY, 1.0D - fractionalY);
-        double distanceZ = Math.min(fractionalZ, 1.0D - fractionalZ);
-
-        double nearest = Math.min(distanceX, Math.min(distanceY, distanceZ));
-        if (nearest <= noviaversionkick$SURFACE_THRESHOLD) {
-            if (distanceX <= nearest + noviaversionkick$AXIS_EPSILON) {
-                posX = baseX + (fractionalX < 0.5D ? 0.0D : 1.0D);
-            } else if (distanceY <= nearest + noviaversionkick$AXIS_EPSILON) {
-                posY = baseY + (fractionalY < 0.5D ? 0.0D : 1.0D);
+    private void noviaversionkick$rememberEncoding(RegistryByteBuf buf, int start, boolean legacy) {
+        if (legacy ? !this.noviaversionkick$legacyEncoded : !this.noviaversionkick$modernEncoded) {
+            if (legacy) {
+                this.noviaversionkick$legacyEncoded = true;
             } else {
-                posZ = baseZ + (fractionalZ < 0.5D ? 0.0D : 1.0D);
+                this.noviaversionkick$modernEncoded = true;
             }
+            return;
+        }
+        byte[] encoded = new byte[buf.writerIndex() - start];
+        buf.getBytes(start, encoded);
+        if (legacy) {
+            this.noviaversionkick$legacyBytes = encoded;
+        } else {
+            this.noviaversionkick$modernBytes = encoded;
         }
+    }
 
-        buf.writeDouble(posX);
-        buf.writeDouble(posY);
-        buf.writeDouble(posZ);
+    @Unique
+    private void noviaversionkick$writeLegacy(RegistryByteBuf buf) {
+        LegacyParticleWriter.write(
+            buf,
+            this.parameters,
+            this.forceSpawn,
+            this.x,
+            this.y,
+            this.z,
+            this.offsetX,
+            this.offsetY,
+            this.offsetZ,
+            this.speed,
+            this.count
+        );
     }
 }
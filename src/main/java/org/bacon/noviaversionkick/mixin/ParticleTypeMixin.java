@@ -0,0 +1,21 @@
+package org.bacon.noviaversionkick.mixin;
+
+import net.minecraft.particle.ParticleType;
+import org.bacon.noviaversionkick.particle.ParticleTypeIdCache;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Unique;
+
+@Mixin(ParticleType.class)
+public abstract class ParticleTypeMixin implements ParticleTypeIdCache {
+    @Unique private int noviaversionkick$rawId = -1;
+
+    @Override
+    public int noviaversionkick$getRawId() {
+        return this.noviaversionkick$rawId;
+    }
+
+    @Override
+    public void noviaversionkick$setRawId(int rawId) {
+        this.noviaversionkick$rawId = rawId;
+    }
+}
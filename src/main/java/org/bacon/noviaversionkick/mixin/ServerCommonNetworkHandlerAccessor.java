@@ -1,12 +1,17 @@
 package org.bacon.noviaversionkick.mixin;
 
+import com.mojang.authlib.GameProfile;
 import net.minecraft.network.ClientConnection;
 import net.minecraft.server.network.ServerCommonNetworkHandler;
 import org.spongepowered.asm.mixin.Mixin;
 import org.spongepowered.asm.mixin.gen.Accessor;
+import org.spongepowered.asm.mixin.gen.Invoker;
 
 @Mixin(ServerCommonNetworkHandler.class)
 public interface ServerCommonNetworkHandlerAccessor {
     @Accessor("connection")
     ClientConnection noviaversionkick$getConnection();
+
+    @Invoker("getProfile")
+    GameProfile noviaversionkick$getProfile();
 }
@@ -0,0 +1,17 @@
+package org.bacon.noviaversionkick.mixin;
+
+import net.minecraft.network.packet.c2s.common.ClientOptionsC2SPacket;
+import net.minecraft.server.network.ServerConfigurationNetworkHandler;
+import org.bacon.noviaversionkick.network.ViaBrandTracker;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+
+@Mixin(ServerConfigurationNetworkHandler.class)
+public abstract class ServerConfigurationNetworkHandlerMixin {
+    @Inject(method = "onClientOptions", at = @At("HEAD"))
+    private void noviaversionkick$trackParticleStatus(ClientOptionsC2SPacket packet, CallbackInfo ci) {
+        ViaBrandTracker.setParticleStatus(((ServerCommonNetworkHandlerAccessor) this).noviaversionkick$getConnection(), packet.options().particleStatus());
+    }
+}
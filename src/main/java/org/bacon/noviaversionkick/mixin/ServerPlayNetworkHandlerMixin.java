@@ -2,6 +2,7 @@ package org.bacon.noviaversionkick.mixin;
 
 import net.minecraft.network.packet.BrandCustomPayload;
 import net.minecraft.network.packet.CustomPayload;
+import net.minecraft.network.packet.c2s.common.ClientOptionsC2SPacket;
 import net.minecraft.network.packet.c2s.common.CustomPayloadC2SPacket;
 import net.minecraft.server.network.ServerPlayNetworkHandler;
 import org.bacon.noviaversionkick.network.ViaBrandTracker;
@@ -19,4 +20,9 @@ public abstract class ServerPlayNetworkHandlerMixin {
             ViaBrandTracker.setBrand(((ServerCommonNetworkHandlerAccessor) this).noviaversionkick$getConnection(), brandPayload.brand());
         }
     }
+
+    @Inject(method = "onClientOptions", at = @At("HEAD"))
+    private void noviaversionkick$trackParticleStatus(ClientOptionsC2SPacket packet, CallbackInfo ci) {
+        ViaBrandTracker.setParticleStatus(((ServerCommonNetworkHandlerAccessor) this).noviaversionkick$getConnection(), packet.options().particleStatus());
+    }
 }
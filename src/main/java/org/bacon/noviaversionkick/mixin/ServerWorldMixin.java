@@ -0,0 +1,22 @@
+package org.bacon.noviaversionkick.mixin;
+
+import net.minecraft.network.packet.Packet;
+import net.minecraft.server.network.ServerPlayNetworkHandler;
+import net.minecraft.server.world.ServerWorld;
+import org.bacon.noviaversionkick.particle.ParticleCoalescer;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Redirect;
+
+@Mixin(ServerWorld.class)
+public abstract class ServerWorldMixin {
+    @Redirect(
+        method = "sendToPlayerIfNearby",
+        at = @At(value = "INVOKE", target = "Lnet/minecraft/server/network/ServerPlayNetworkHandler;sendPacket(Lnet/minecraft/network/packet/Packet;)V")
+    )
+    private void noviaversionkick$sendParticle(ServerPlayNetworkHandler handler, Packet<?> packet) {
+        if (!ParticleCoalescer.offer(handler, packet)) {
+            handler.sendPacket(packet);
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package org.bacon.noviaversionkick.network;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Evaluates the brand conditions of the compiled {@link ClientRules}. Servers see
+ * only a few dozen distinct brands, so results are cached by the brand string;
+ * misses run the substring automaton once plus any regex rules.
+ */
+final class BrandClassifier {
+    /** Past this many distinct brands the cache is dropped and refilled. */
+    private static final int MAX_CACHED = 1024;
+
+    private final SubstringMatcher substrings;
+    private final List<RegexRule> regexRules;
+    private final Map<String, Long> cache = new ConcurrentHashMap<>();
+
+    BrandClassifier(SubstringMatcher substrings, List<RegexRule> regexRules) {
+        this.substrings = substrings;
+        this.regexRules = List.copyOf(regexRules);
+    }
+
+    /**
+     * Mask of the rules whose brand condition the brand satisfies.
+     */
+    long classify(String brand) {
+        Long cached = this.cache.get(brand);
+        if (cached != null) {
+            return cached;
+        }
+        // Substrings cannot contain NUL or surrounding whitespace, so matching the
+        // whole brand is the same as matching each trimmed NUL-separated fragment.
+        long matched = this.substrings.match(brand);
+        for (RegexRule rule : this.regexRules) {
+            if ((matched & rule.bit()) == 0L && rule.pattern().matcher(brand).find()) {
+                matched |= rule.bit();
+            }
+        }
+        if (this.cache.size() >= MAX_CACHED) {
+            this.cache.clear();
+        }
+        this.cache.put(brand, matched);
+        return matched;
+    }
+
+    record RegexRule(Pattern pattern, long bit) {
+    }
+}
@@ -0,0 +1,224 @@
+package org.bacon.noviaversionkick.network;
+
+import org.apache.logging.log4j.Logger;
+import org.bacon.noviaversionkick.log.ModLogger;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Last particle encoding decided for each player, kept in a memory-mapped file so
+ * a returning player can be classified from their UUID before their brand
+ * arrives. The file is a fixed open-addressing table of 32-byte slots
+ * ({@code uuid msb, uuid lsb, epoch millis, encoding}); when a probe window is
+ * full the least recently seen player in it is evicted.
+ * <p>
+ * Lookups read the mapping directly. Records are queued and applied by a
+ * background thread, which also forces the mapping to disk once per batch, so
+ * login never waits on the disk.
+ */
+public final class ClientFingerprintStore {
+    private static final Logger LOGGER = ModLogger.get();
+    private static final int MAGIC = 0x4E56564B;
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_BYTES = 32;
+    private static final int SLOT_BYTES = 32;
+    private static final int MIN_SLOTS = 1024;
+    private static final int PROBE_LIMIT = 8;
+    private static final long FLUSH_INTERVAL_MILLIS = 1000L;
+    private static final int MAX_PENDING = 4096;
+    private static final byte EMPTY = 0;
+
+    private static volatile ClientFingerprintStore current;
+
+    private final FileChannel file;
+    private final MappedByteBuffer buffer;
+    private final int mask;
+    private final BlockingQueue<Entry> pending = new LinkedBlockingQueue<>(MAX_PENDING);
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    private ClientFingerprintStore(FileChannel file, MappedByteBuffer buffer, int slots) {
+        this.file = file;
+        this.buffer = buffer;
+        this.mask = slots - 1;
+        this.writer = new Thread(this::runWriter, "NoViaVersionKick fingerprint writer");
+        this.writer.setDaemon(true);
+    }
+
+    public static void open(Path path, int requestedSlots) {
+        close();
+        try {
+            Files.createDirectories(path.getParent());
+            FileChannel file = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            int slots = Integer.highestOneBit(Math.max(MIN_SLOTS, requestedSlots));
+            boolean fresh = file.size() < HEADER_BYTES;
+            if (!fresh) {
+                MappedByteBuffer header = file.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+                int existingSlots = header.getInt(8);
+                if (header.getInt(0) != MAGIC || header.getInt(4) != FORMAT_VERSION
+                    || Integer.bitCount(existingSlots) != 1 || file.size() < HEADER_BYTES + (long) existingSlots * SLOT_BYTES) {
+                    LOGGER.warn("Discarding unreadable client fingerprint file {}", path);
+                    file.truncate(0);
+                    fresh = true;
+                } else {
+                    // Keep the table the file was created with; resizing would rehash every slot.
+                    slots = existingSlots;
+                }
+            }
+            MappedByteBuffer buffer = file.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES + (long) slots * SLOT_BYTES);
+            if (fresh) {
+                buffer.putInt(0, MAGIC);
+                buffer.putInt(4, FORMAT_VERSION);
+                buffer.putInt(8, slots);
+            }
+            ClientFingerprintStore store = new ClientFingerprintStore(file, buffer, slots);
+            store.writer.start();
+            current = store;
+            LOGGER.debug("Opened client fingerprint store {} with {} slots", path, slots);
+        } catch (IOException | RuntimeException exception) {
+            LOGGER.warn("Failed to open client fingerprint store {}; players will be classified from their brand only", path, exception);
+        }
+    }
+
+    public static void close() {
+        ClientFingerprintStore store = current;
+        if (store == null) {
+            return;
+        }
+        current = null;
+        store.running = false;
+        store.writer.interrupt();
+        try {
+            store.writer.join(5000L);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            store.file.close();
+        } catch (IOException exception) {
+            LOGGER.warn("Failed to close client fingerprint store", exception);
+        }
+    }
+
+    /**
+     * Encoding last recorded for the player, or null when unknown or the store is
+     * not open.
+     */
+    public static ParticleEncoding lookup(UUID player) {
+        ClientFingerprintStore store = current;
+        return store == null ? null : store.read(player);
+    }
+
+    /**
+     * Queues the decision for the writer thread. Never blocks; when the queue is
+     * full the record is dropped and the player is simply classified again on
+     * their next login.
+     */
+    public static void record(UUID player, ParticleEncoding encoding) {
+        ClientFingerprintStore store = current;
+        if (store != null && player != null && encoding != null) {
+            store.pending.offer(new Entry(player, encoding, System.currentTimeMillis()));
+        }
+    }
+
+    private synchronized ParticleEncoding read(UUID player) {
+        long msb = player.getMostSignificantBits();
+        long lsb = player.getLeastSignificantBits();
+        int start = slotOf(msb, lsb);
+        for (int i = 0; i < PROBE_LIMIT; i++) {
+            int offset = offset(start + i);
+            byte encoding = this.buffer.get(offset + 24);
+            if (encoding == EMPTY) {
+                return null;
+            }
+            if (this.buffer.getLong(offset) == msb && this.buffer.getLong(offset + 8) == lsb) {
+                return decode(encoding);
+            }
+        }
+        return null;
+    }
+
+    private synchronized void write(Entry entry) {
+        long msb = entry.player.getMostSignificantBits();
+        long lsb = entry.player.getLeastSignificantBits();
+        int start = slotOf(msb, lsb);
+        int target = -1;
+        long oldest = Long.MAX_VALUE;
+        for (int i = 0; i < PROBE_LIMIT; i++) {
+            int offset = offset(start + i);
+            byte encoding = this.buffer.get(offset + 24);
+            if (encoding == EMPTY || (this.buffer.getLong(offset) == msb && this.buffer.getLong(offset + 8) == lsb)) {
+                target = offset;
+                break;
+            }
+            long seen = this.buffer.getLong(offset + 16);
+            if (seen < oldest) {
+                oldest = seen;
+                target = offset;
+            }
+        }
+        this.buffer.putLong(target, msb);
+        this.buffer.putLong(target + 8, lsb);
+        this.buffer.putLong(target + 16, entry.seenAt);
+        this.buffer.put(target + 24, entry.encoding == ParticleEncoding.LEGACY ? (byte) 2 : (byte) 1);
+    }
+
+    private void runWriter() {
+        List<Entry> batch = new ArrayList<>();
+        while (this.running || !this.pending.isEmpty()) {
+            try {
+                Entry first = this.pending.poll(FLUSH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+            } catch (InterruptedException exception) {
+                // Woken by close(); drain whatever is left before exiting.
+            }
+            this.pending.drainTo(batch);
+            if (batch.isEmpty()) {
+                continue;
+            }
+            for (Entry entry : batch) {
+                write(entry);
+            }
+            batch.clear();
+            try {
+                this.buffer.force();
+            } catch (RuntimeException exception) {
+                LOGGER.warn("Failed to flush client fingerprint store", exception);
+            }
+        }
+    }
+
+    private int slotOf(long msb, long lsb) {
+        long hash = (msb ^ lsb) * 0x9E3779B97F4A7C15L;
+        return (int) (hash >>> 32) & this.mask;
+    }
+
+    private int offset(int slot) {
+        return HEADER_BYTES + (slot & this.mask) * SLOT_BYTES;
+    }
+
+    private static ParticleEncoding decode(byte encoding) {
+        return switch (encoding) {
+            case 1 -> ParticleEncoding.MODERN;
+            case 2 -> ParticleEncoding.LEGACY;
+            default -> null;
+        };
+    }
+
+    private record Entry(UUID player, ParticleEncoding encoding, long seenAt) {
+    }
+}
@@ -0,0 +1,94 @@
+package org.bacon.noviaversionkick.network;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.StringJoiner;
+
+/**
+ * One client's mod list as sorted {@link ModIdDictionary} ints, with the union of
+ * their rule traits. Ids the dictionary had no room for only contribute traits.
+ */
+final class ClientModSet {
+    private final int[] ids;
+    private final long containsMask;
+    private final long requirementBits;
+    private final long forbiddenMask;
+    private final int uninterned;
+
+    private ClientModSet(int[] ids, long containsMask, long requirementBits, long forbiddenMask, int uninterned) {
+        this.ids = ids;
+        this.containsMask = containsMask;
+        this.requirementBits = requirementBits;
+        this.forbiddenMask = forbiddenMask;
+        this.uninterned = uninterned;
+    }
+
+    /**
+     * Returns null when the collection holds no non-blank ids.
+     */
+    static ClientModSet of(Collection<String> mods) {
+        if (mods == null || mods.isEmpty()) {
+            return null;
+        }
+        int[] ids = new int[mods.size()];
+        int count = 0;
+        long containsMask = 0L;
+        long requirementBits = 0L;
+        long forbiddenMask = 0L;
+        int uninterned = 0;
+        for (String mod : mods) {
+            String normalized = ModIdDictionary.normalize(mod);
+            if (normalized == null) {
+                continue;
+            }
+            int id = ModIdDictionary.intern(normalized);
+            ClientRules.ModIdTraits traits;
+            if (id == ModIdDictionary.UNINTERNED) {
+                traits = ClientRules.current().traitsOf(normalized);
+                uninterned++;
+            } else {
+                traits = ModIdDictionary.traits(id);
+                ids[count++] = id;
+            }
+            containsMask |= traits.containsMask();
+            requirementBits |= traits.requirementBits();
+            forbiddenMask |= traits.forbiddenMask();
+        }
+        if (count == 0 && uninterned == 0) {
+            return null;
+        }
+        Arrays.sort(ids, 0, count);
+        int unique = 0;
+        for (int i = 0; i < count; i++) {
+            if (unique == 0 || ids[unique - 1] != ids[i]) {
+                ids[unique++] = ids[i];
+            }
+        }
+        return new ClientModSet(unique == ids.length ? ids : Arrays.copyOf(ids, unique), containsMask, requirementBits, forbiddenMask, uninterned);
+    }
+
+    long containsMask() {
+        return this.containsMask;
+    }
+
+    long requirementBits() {
+        return this.requirementBits;
+    }
+
+    long forbiddenMask() {
+        return this.forbiddenMask;
+    }
+
+    int size() {
+        return this.ids.length + this.uninterned;
+    }
+
+    @Override
+    public String toString() {
+        StringJoiner joiner = new StringJoiner(", ", "[", this.uninterned > 0 ? ", +" + this.uninterned + " more]" : "]");
+        for (int id : this.ids) {
+            joiner.add(ModIdDictionary.name(id));
+        }
+        return joiner.toString();
+    }
+}
@@ -0,0 +1,34 @@
+package org.bacon.noviaversionkick.network;
+
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * One {@code rules.<name>.*} entry of the config. A rule matches when every
+ * condition it sets holds:
+ * <ul>
+ *     <li>{@code brand}: the brand contains one of these substrings (ASCII, case-insensitive)
+ *     or matches {@code brandRegex};</li>
+ *     <li>{@code modIdContains}: some mod id contains one of these substrings;</li>
+ *     <li>{@code modsRequired}: every one of these mod ids is present;</li>
+ *     <li>{@code modsForbidden}: none of these mod ids is present.</li>
+ * </ul>
+ * A rule setting no conditions matches every client. Of the matching rules the
+ * one with the highest {@code priority} decides the encoding; clients matching no
+ * rule get modern particles.
+ */
+public record ClientRule(
+    String name,
+    int priority,
+    ParticleEncoding encoding,
+    List<String> brandContains,
+    Pattern brandRegex,
+    List<String> modIdContains,
+    Set<String> modsRequired,
+    Set<String> modsForbidden
+) {
+    boolean hasBrandCondition() {
+        return !this.brandContains.isEmpty() || this.brandRegex != null;
+    }
+}
@@ -0,0 +1,186 @@
+package org.bacon.noviaversionkick.network;
+
+import org.apache.logging.log4j.Logger;
+import org.bacon.noviaversionkick.config.NoviaversionkickConfig;
+import org.bacon.noviaversionkick.log.ModLogger;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The configured {@link ClientRule}s compiled into bitmasks. Rules are ordered by
+ * descending priority and rule {@code i} owns bit {@code i}, so the winning rule
+ * is the lowest set bit of the matched mask. Brand substrings and mod id
+ * substrings each go into one {@link SubstringMatcher}; mod ids are evaluated once
+ * when they are interned into {@link ModIdDictionary}, so deciding a client never
+ * walks its mod list.
+ * <p>
+ * Compiled once at startup, before any client connects; interned mod id traits
+ * are not recomputed afterwards.
+ */
+public final class ClientRules {
+    private static final Logger LOGGER = ModLogger.get();
+    static final int MAX_RULES = Long.SIZE;
+    private static volatile ClientRules current = compile(NoviaversionkickConfig.get().clientRules);
+
+    private final ClientRule[] rules;
+    private final BrandClassifier brands;
+    private final SubstringMatcher modIds;
+    /** Bit per distinct required mod id, and the bits each rule needs. */
+    private final Map<String, Long> requirementBits;
+    private final long[] requiredByRule;
+    private final Map<String, Long> forbiddenRules;
+    /** Rules with no brand / mod id substring condition pass those checks outright. */
+    private final long brandFree;
+    private final long modIdFree;
+
+    private ClientRules(ClientRule[] rules, BrandClassifier brands, SubstringMatcher modIds, Map<String, Long> requirementBits,
+                        long[] requiredByRule, Map<String, Long> forbiddenRules, long brandFree, long modIdFree) {
+        this.rules = rules;
+        this.brands = brands;
+        this.modIds = modIds;
+        this.requirementBits = requirementBits;
+        this.requiredByRule = requiredByRule;
+        this.forbiddenRules = forbiddenRules;
+        this.brandFree = brandFree;
+        this.modIdFree = modIdFree;
+    }
+
+    public static ClientRules current() {
+        return current;
+    }
+
+    public static void rebuild() {
+        current = compile(NoviaversionkickConfig.get().clientRules);
+    }
+
+    private static ClientRules compile(List<ClientRule> configured) {
+        List<ClientRule> ordered = new ArrayList<>(configured);
+        ordered.sort(Comparator.comparingInt(ClientRule::priority).reversed().thenComparing(ClientRule::name));
+        if (ordered.size() > MAX_RULES) {
+            LOGGER.warn("Only the {} highest priority client rules are used; ignoring {} more", MAX_RULES, ordered.size() - MAX_RULES);
+            ordered = new ArrayList<>(ordered.subList(0, MAX_RULES));
+        }
+
+        SubstringMatcher.Builder brandPatterns = new SubstringMatcher.Builder();
+        SubstringMatcher.Builder modPatterns = new SubstringMatcher.Builder();
+        List<BrandClassifier.RegexRule> regexRules = new ArrayList<>();
+        Map<String, Long> requirementBits = new HashMap<>();
+        Map<String, Long> forbiddenRules = new HashMap<>();
+        List<ClientRule> accepted = new ArrayList<>();
+        List<Long> required = new ArrayList<>();
+        long brandFree = 0L;
+        long modIdFree = 0L;
+        for (ClientRule rule : ordered) {
+            long needed = 0L;
+            boolean fits = true;
+            for (String id : rule.modsRequired()) {
+                Long bit = requirementBits.get(id);
+                if (bit == null) {
+                    if (requirementBits.size() == Long.SIZE) {
+                        fits = false;
+                        break;
+                    }
+                    bit = 1L << requirementBits.size();
+                    requirementBits.put(id, bit);
+                }
+                needed |= bit;
+            }
+            if (!fits) {
+                LOGGER.warn("Ignoring client rule '{}': more than {} distinct required mod ids across all rules", rule.name(), Long.SIZE);
+                continue;
+            }
+            long bit = 1L << accepted.size();
+            accepted.add(rule);
+            required.add(needed);
+            for (String pattern : supportedPatterns(rule, rule.brandContains())) {
+                brandPatterns.add(pattern, bit);
+            }
+            if (rule.brandRegex() != null) {
+                regexRules.add(new BrandClassifier.RegexRule(rule.brandRegex(), bit));
+            }
+            for (String pattern : supportedPatterns(rule, rule.modIdContains())) {
+                modPatterns.add(pattern, bit);
+            }
+            for (String id : rule.modsForbidden()) {
+                forbiddenRules.merge(id, bit, (a, b) -> a | b);
+            }
+            if (!rule.hasBrandCondition()) {
+                brandFree |= bit;
+            }
+            if (rule.modIdContains().isEmpty()) {
+                modIdFree |= bit;
+            }
+        }
+        long[] requiredByRule = new long[accepted.size()];
+        for (int i = 0; i < requiredByRule.length; i++) {
+            requiredByRule[i] = required.get(i);
+        }
+        LOGGER.debug("Compiled {} client classification rules", accepted.size());
+        return new ClientRules(
+            accepted.toArray(new ClientRule[0]),
+            new BrandClassifier(brandPatterns.build(), regexRules),
+            modPatterns.build(),
+            requirementBits,
+            requiredByRule,
+            forbiddenRules,
+            brandFree,
+            modIdFree
+        );
+    }
+
+    private static List<String> supportedPatterns(ClientRule rule, List<String> patterns) {
+        List<String> supported = new ArrayList<>(patterns.size());
+        for (String pattern : patterns) {
+            if (SubstringMatcher.isSupported(pattern)) {
+                supported.add(pattern);
+            } else {
+                LOGGER.warn("Ignoring non-ASCII pattern '{}' in client rule '{}'; use brandRegex instead", pattern, rule.name());
+            }
+        }
+        return supported;
+    }
+
+    /**
+     * What a single normalised mod id contributes to rule matching. Called once
+     * per id when it is interned.
+     */
+    ModIdTraits traitsOf(String id) {
+        long contains = this.modIds.match(id);
+        long requirement = this.requirementBits.getOrDefault(id, 0L);
+        long forbidden = this.forbiddenRules.getOrDefault(id, 0L);
+        if (contains == 0L && requirement == 0L && forbidden == 0L) {
+            return ModIdTraits.NONE;
+        }
+        return new ModIdTraits(contains, requirement, forbidden);
+    }
+
+    /**
+     * Highest priority rule matching the client, or null when none does.
+     */
+    ClientRule decide(String brand, ClientModSet mods) {
+        long matched = this.brandFree | (brand == null ? 0L : this.brands.classify(brand));
+        if (matched == 0L) {
+            return null;
+        }
+        long contains = mods == null ? 0L : mods.containsMask();
+        long present = mods == null ? 0L : mods.requirementBits();
+        long forbidden = mods == null ? 0L : mods.forbiddenMask();
+        matched &= (this.modIdFree | contains) & ~forbidden;
+        for (long remaining = matched; remaining != 0L; remaining &= remaining - 1) {
+            int index = Long.numberOfTrailingZeros(remaining);
+            long needed = this.requiredByRule[index];
+            if ((present & needed) == needed) {
+                return this.rules[index];
+            }
+        }
+        return null;
+    }
+
+    record ModIdTraits(long containsMask, long requirementBits, long forbiddenMask) {
+        static final ModIdTraits NONE = new ModIdTraits(0L, 0L, 0L);
+    }
+}
@@ -0,0 +1,200 @@
+package org.bacon.noviaversionkick.network;
+
+import io.netty.buffer.ByteBuf;
+import org.bacon.noviaversionkick.config.NoviaversionkickConfig;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Reads the mod ids out of a {@code fabric:mod_list} login response. Three
+ * layouts are seen in the wild, tried in this order:
+ * <ol>
+ *     <li>handshake version (0-5), count, then {@code id, version} pairs;</li>
+ *     <li>count, then ids;</li>
+ *     <li>ids until an empty one or the end of the payload.</li>
+ * </ol>
+ * The first two are validated by a scan over absolute indices before any string
+ * is decoded, so malformed payloads cost one bounded pass and no exceptions. The
+ * buffer's reader index is left untouched.
+ * <p>
+ * Entry counts and id lengths are capped by {@code modList.maxEntries} and
+ * {@code modList.maxIdLength}; a layout that exceeds either is treated as
+ * malformed, and the id-terminated layout stops at the first offending entry.
+ */
+public final class FabricModListParser {
+    static final int MAX_HANDSHAKE_VERSION = 5;
+    /** Same bound {@code PacketByteBuf.readString(Short.MAX_VALUE)} applies; used for version strings. */
+    private static final int MAX_STRING_BYTES = Short.MAX_VALUE * 3;
+
+    private FabricModListParser() {
+    }
+
+    /**
+     * Returns the lowercased, trimmed mod ids, or an empty list when the payload
+     * does not contain any.
+     */
+    public static List<String> parse(ByteBuf buf) {
+        NoviaversionkickConfig config = NoviaversionkickConfig.get();
+        return parse(buf, config.modListMaxEntries, config.modListMaxIdLength);
+    }
+
+    public static List<String> parse(ByteBuf buf, int maxEntries, int maxIdBytes) {
+        int start = buf.readerIndex();
+        int end = buf.writerIndex();
+        long header = readVarInt(buf, start, end);
+        if (header < 0) {
+            return List.of();
+        }
+        int first = value(header);
+        int afterHeader = start + size(header);
+        if (first >= 0 && first <= MAX_HANDSHAKE_VERSION) {
+            long count = readVarInt(buf, afterHeader, end);
+            if (count >= 0) {
+                List<String> ids = readCounted(buf, afterHeader + size(count), end, value(count), true, maxEntries, maxIdBytes);
+                if (ids != null) {
+                    return ids;
+                }
+            }
+        }
+        List<String> ids = readCounted(buf, afterHeader, end, first, false, maxEntries, maxIdBytes);
+        if (ids != null) {
+            return ids;
+        }
+        return readUntilEmpty(buf, start, end, maxEntries, maxIdBytes);
+    }
+
+    /**
+     * Returns null unless all {@code count} entries are well formed and at least
+     * one id is not blank.
+     */
+    private static List<String> readCounted(ByteBuf buf, int index, int end, int count, boolean versioned, int maxEntries, int maxIdBytes) {
+        // Every entry takes at least one byte, so a count larger than the rest of
+        // the payload can be rejected without looking at it.
+        if (count <= 0 || count > maxEntries || count > end - index) {
+            return null;
+        }
+        int cursor = index;
+        boolean anyId = false;
+        for (int i = 0; i < count; i++) {
+            long span = readStringSpan(buf, cursor, end, maxIdBytes);
+            if (span < 0) {
+                return null;
+            }
+            anyId |= !isBlank(buf, cursor + size(span), value(span));
+            cursor += size(span) + value(span);
+            if (versioned && cursor < end) {
+                long version = readStringSpan(buf, cursor, end, MAX_STRING_BYTES);
+                if (version < 0) {
+                    return null;
+                }
+                cursor += size(version) + value(version);
+            }
+        }
+        if (!anyId) {
+            return null;
+        }
+
+        List<String> ids = new ArrayList<>(count);
+        cursor = index;
+        for (int i = 0; i < count; i++) {
+            long span = readStringSpan(buf, cursor, end, maxIdBytes);
+            int data = cursor + size(span);
+            int length = value(span);
+            if (!isBlank(buf, data, length)) {
+                ids.add(decode(buf, data, length));
+            }
+            cursor = data + length;
+            if (versioned && cursor < end) {
+                long version = readStringSpan(buf, cursor, end, MAX_STRING_BYTES);
+                cursor += size(version) + value(version);
+            }
+        }
+        return ids;
+    }
+
+    private static List<String> readUntilEmpty(ByteBuf buf, int index, int end, int maxEntries, int maxIdBytes) {
+        Set<String> ids = new LinkedHashSet<>();
+        int cursor = index;
+        for (int read = 0; read < maxEntries && cursor < end; read++) {
+            long span = readStringSpan(buf, cursor, end, maxIdBytes);
+            if (span < 0) {
+                break;
+            }
+            int data = cursor + size(span);
+            int length = value(span);
+            if (isBlank(buf, data, length)) {
+                break;
+            }
+            ids.add(decode(buf, data, length));
+            cursor = data + length;
+        }
+        return ids.isEmpty() ? List.of() : new ArrayList<>(ids);
+    }
+
+    private static String decode(ByteBuf buf, int index, int length) {
+        return buf.toString(index, length, StandardCharsets.UTF_8).trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Matches {@link String#trim()}: UTF-8 bytes up to {@code 0x20} are exactly the
+     * characters it strips, and every multi-byte sequence decodes to something else.
+     */
+    private static boolean isBlank(ByteBuf buf, int index, int length) {
+        for (int i = index, end = index + length; i < end; i++) {
+            if ((buf.getByte(i) & 0xFF) > 0x20) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Length prefix of a string starting at {@code index}, packed like
+     * {@link #readVarInt}, or -1 when the string is longer than {@code maxBytes} or
+     * truncated.
+     */
+    private static long readStringSpan(ByteBuf buf, int index, int end, int maxBytes) {
+        long prefix = readVarInt(buf, index, end);
+        if (prefix < 0) {
+            return -1L;
+        }
+        int length = value(prefix);
+        if (length < 0 || length > maxBytes || length > end - index - size(prefix)) {
+            return -1L;
+        }
+        return prefix;
+    }
+
+    /**
+     * Reads a VarInt at an absolute index. Returns the value in the low 32 bits and
+     * the number of bytes it occupied in the high bits, or -1 when it is malformed
+     * or runs past {@code end}.
+     */
+    private static long readVarInt(ByteBuf buf, int index, int end) {
+        int value = 0;
+        for (int i = 0; i < 5; i++) {
+            if (index + i >= end) {
+                return -1L;
+            }
+            byte b = buf.getByte(index + i);
+            value |= (b & 0x7F) << (i * 7);
+            if ((b & 0x80) == 0) {
+                return ((long) (i + 1) << 32) | (value & 0xFFFFFFFFL);
+            }
+        }
+        return -1L;
+    }
+
+    private static int value(long packed) {
+        return (int) packed;
+    }
+
+    private static int size(long packed) {
+        return (int) (packed >>> 32);
+    }
+}
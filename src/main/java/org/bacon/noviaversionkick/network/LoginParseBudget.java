@@ -0,0 +1,139 @@
+package org.bacon.noviaversionkick.network;
+
+import org.bacon.noviaversionkick.config.NoviaversionkickConfig;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * CPU time spent parsing login payloads, accounted per remote IPv4 address or
+ * IPv6 /64 over a fixed window. Once an address has used its share, further
+ * payloads from it are skipped until the window rolls over, so a wave of bots
+ * from a few addresses cannot keep the login path busy. Local connections are
+ * never limited.
+ */
+public final class LoginParseBudget {
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    private static final boolean THREAD_CPU_TIME = THREADS.isCurrentThreadCpuTimeSupported() && THREADS.isThreadCpuTimeEnabled();
+    /** Expired accounts are swept, at most once per window, once the table grows past this. */
+    private static final int SWEEP_THRESHOLD = 4096;
+    private static final Map<InetAddress, Account> ACCOUNTS = new ConcurrentHashMap<>();
+    private static final AtomicLong LAST_SWEEP = new AtomicLong(System.nanoTime());
+
+    private LoginParseBudget() {
+    }
+
+    /**
+     * Returns false when the address has used up its parse budget for the current
+     * window.
+     */
+    public static boolean tryAcquire(SocketAddress address) {
+        InetAddress ip = ipOf(address);
+        if (ip == null) {
+            return true;
+        }
+        Account account = ACCOUNTS.get(ip);
+        if (account == null) {
+            return true;
+        }
+        NoviaversionkickConfig config = NoviaversionkickConfig.get();
+        return account.remaining(config, System.nanoTime()) > 0L;
+    }
+
+    /**
+     * Current thread's CPU time, or wall-clock time where the JVM does not measure
+     * per-thread CPU. Pass the difference of two readings to {@link #charge}.
+     */
+    public static long now() {
+        return THREAD_CPU_TIME ? THREADS.getCurrentThreadCpuTime() : System.nanoTime();
+    }
+
+    public static void charge(SocketAddress address, long nanos) {
+        InetAddress ip = ipOf(address);
+        if (ip == null || nanos <= 0L) {
+            return;
+        }
+        long wallNow = System.nanoTime();
+        if (ACCOUNTS.size() > SWEEP_THRESHOLD) {
+            sweep(wallNow);
+        }
+        ACCOUNTS.computeIfAbsent(ip, key -> new Account(wallNow)).charge(NoviaversionkickConfig.get(), wallNow, nanos);
+    }
+
+    /**
+     * Drops expired accounts unless another caller swept within the last window,
+     * so a full table costs one pass per window rather than one per login.
+     */
+    private static void sweep(long wallNow) {
+        long window = windowNanos(NoviaversionkickConfig.get());
+        long last = LAST_SWEEP.get();
+        if (wallNow - last < window || !LAST_SWEEP.compareAndSet(last, wallNow)) {
+            return;
+        }
+        ACCOUNTS.values().removeIf(account -> account.isExpired(wallNow, window));
+    }
+
+    private static InetAddress ipOf(SocketAddress address) {
+        if (!(address instanceof InetSocketAddress inet)) {
+            return null;
+        }
+        InetAddress ip = inet.getAddress();
+        if (ip == null || ip.isLoopbackAddress()) {
+            return null;
+        }
+        if (ip instanceof Inet6Address) {
+            // A single host is usually handed a whole /64, so account per prefix.
+            byte[] prefix = Arrays.copyOf(ip.getAddress(), 16);
+            Arrays.fill(prefix, 8, 16, (byte) 0);
+            try {
+                return InetAddress.getByAddress(prefix);
+            } catch (UnknownHostException exception) {
+                return ip;
+            }
+        }
+        return ip;
+    }
+
+    private static long windowNanos(NoviaversionkickConfig config) {
+        return (long) (config.loginParseWindowSeconds * 1.0E9D);
+    }
+
+    private static final class Account {
+        private long windowStart;
+        private long used;
+
+        Account(long windowStart) {
+            this.windowStart = windowStart;
+        }
+
+        synchronized long remaining(NoviaversionkickConfig config, long wallNow) {
+            roll(config, wallNow);
+            return (long) (config.loginParseCpuMillisPerIp * 1.0E6D) - this.used;
+        }
+
+        synchronized void charge(NoviaversionkickConfig config, long wallNow, long nanos) {
+            roll(config, wallNow);
+            this.used += nanos;
+        }
+
+        synchronized boolean isExpired(long wallNow, long window) {
+            return wallNow - this.windowStart >= window;
+        }
+
+        private void roll(NoviaversionkickConfig config, long wallNow) {
+            if (wallNow - this.windowStart >= windowNanos(config)) {
+                this.windowStart = wallNow;
+                this.used = 0L;
+            }
+        }
+    }
+}
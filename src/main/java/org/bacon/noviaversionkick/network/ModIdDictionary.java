@@ -0,0 +1,88 @@
+package org.bacon.noviaversionkick.network;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Process-wide, append-only table assigning small ints to normalised mod ids.
+ * Clients hold sorted arrays of these ints instead of their own string sets, and
+ * everything the particle decision needs from an id is computed once, when it is
+ * first interned, as its {@link ClientRules.ModIdTraits}.
+ * <p>
+ * The table stops growing at {@link #MAX_IDS} so a stream of made-up ids cannot
+ * grow it without bound; ids seen after that are classified on every use and not
+ * retained.
+ */
+final class ModIdDictionary {
+    static final int MAX_IDS = 1 << 16;
+    /** Returned by {@link #intern} for ids that did not fit in the table. */
+    static final int UNINTERNED = -1;
+
+    private static final Map<String, Integer> IDS = new ConcurrentHashMap<>();
+    private static final Object LOCK = new Object();
+    private static volatile String[] names = new String[256];
+    private static volatile ClientRules.ModIdTraits[] traits = new ClientRules.ModIdTraits[256];
+    private static int size;
+
+    private ModIdDictionary() {
+    }
+
+    /**
+     * Normalises a raw id (trimmed, lowercased), or returns null for blank ids.
+     */
+    static String normalize(String raw) {
+        if (raw == null) {
+            return null;
+        }
+        String trimmed = raw.trim();
+        return trimmed.isEmpty() ? null : trimmed.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Int for a normalised id, adding it when it is new, or {@link #UNINTERNED}
+     * once the table is full.
+     */
+    static int intern(String id) {
+        Integer existing = IDS.get(id);
+        if (existing != null) {
+            return existing;
+        }
+        synchronized (LOCK) {
+            existing = IDS.get(id);
+            if (existing != null) {
+                return existing;
+            }
+            if (size >= MAX_IDS) {
+                return UNINTERNED;
+            }
+            int index = size;
+            if (index == names.length) {
+                names = Arrays.copyOf(names, index * 2);
+                traits = Arrays.copyOf(traits, index * 2);
+            }
+            // Slots are filled before the id is published through the map, so a
+            // thread that obtained the int also sees its name and traits.
+            names[index] = id;
+            traits[index] = ClientRules.current().traitsOf(id);
+            size = index + 1;
+            IDS.put(id, index);
+            return index;
+        }
+    }
+
+    static String name(int id) {
+        return names[id];
+    }
+
+    static ClientRules.ModIdTraits traits(int id) {
+        return traits[id];
+    }
+
+    static int size() {
+        synchronized (LOCK) {
+            return size;
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package org.bacon.noviaversionkick.network;
+
+/**
+ * Particle packet layout selected for a connection. Published once per input
+ * change so the encode path only has to read it.
+ */
+public enum ParticleEncoding {
+    MODERN,
+    LEGACY
+}
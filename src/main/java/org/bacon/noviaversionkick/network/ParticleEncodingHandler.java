@@ -0,0 +1,305 @@
+package org.bacon.noviaversionkick.network;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import io.netty.util.Attribute;
+import io.netty.util.concurrent.FastThreadLocal;
+import net.minecraft.network.listener.ClientPlayPacketListener;
+import net.minecraft.network.packet.Packet;
+import net.minecraft.network.packet.s2c.play.BundleS2CPacket;
+import net.minecraft.network.packet.s2c.play.ParticleS2CPacket;
+import net.minecraft.particle.ParticleEffect;
+import net.minecraft.particle.ParticleType;
+import net.minecraft.particle.ParticlesMode;
+import org.bacon.noviaversionkick.config.NoviaversionkickConfig;
+import org.bacon.noviaversionkick.mixin.ParticleS2CPacketAccessor;
+import org.bacon.noviaversionkick.particle.DuplicateParticleFilter;
+import org.bacon.noviaversionkick.particle.ParticleAction;
+import org.bacon.noviaversionkick.particle.ParticleBudget;
+import org.bacon.noviaversionkick.particle.ParticleDegradation;
+import org.bacon.noviaversionkick.particle.ParticleDropCounters;
+import org.bacon.noviaversionkick.particle.ParticlePolicyTable;
+import org.bacon.noviaversionkick.particle.RecipientView;
+import org.bacon.noviaversionkick.particle.ServerTickClock;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Outbound stage placed between a connection's packet handler and its encoder.
+ * Particle packets are filtered here, and while one is being written the handler
+ * is exposed to the encoder through {@link #active()}. Encoding runs
+ * synchronously inside {@code ctx.write} on this channel's event loop, so a
+ * packet instance shared by many connections always sees the decision of the
+ * channel currently encoding it.
+ * <p>
+ * Particles for clients on Decreased particles, and for recipients far from the
+ * particle, are thinned without copying the shared packet: the reduced count is
+ * published here for the duration of the write and patched into the encoded body.
+ * Bundles reach this stage before the unbundler splits them, so their particles
+ * go through the same checks and dropped ones are removed from a rebuilt bundle.
+ */
+public final class ParticleEncodingHandler extends ChannelOutboundHandlerAdapter {
+    public static final String NAME = "noviaversionkick_particles";
+    private static final FastThreadLocal<ParticleEncodingHandler> ACTIVE = new FastThreadLocal<>();
+    private static final int DROPPED = -2;
+
+    private Channel channel;
+    private Attribute<ParticleEncoding> encoding;
+    private Attribute<ParticlesMode> status;
+    private int countOverride = -1;
+    // Count overrides for particles inside the bundle being written; the first
+    // {@code bundled} entries are live.
+    private ParticleS2CPacket[] bundledParticles = new ParticleS2CPacket[0];
+    private int[] bundledOverrides = new int[0];
+    private int bundled;
+    private int bundledPending;
+    private DuplicateParticleFilter duplicates;
+
+    /**
+     * Handler of the channel whose particle packet is being encoded on this
+     * thread, or null outside of a particle write.
+     */
+    public static ParticleEncodingHandler active() {
+        return ACTIVE.get();
+    }
+
+    /**
+     * Whether any connection may currently be sent a thinned count.
+     */
+    public static boolean thinningPossible() {
+        return ViaBrandTracker.hasReducedParticleConnections()
+            || NoviaversionkickConfig.get().lodEnabled
+            || ParticleDegradation.level() == ParticleDegradation.DOWNSAMPLED;
+    }
+
+    public ParticleEncoding encoding() {
+        ParticleEncoding encoding = this.encoding.get();
+        return encoding != null ? encoding : ParticleEncoding.MODERN;
+    }
+
+    public Channel channel() {
+        return this.channel;
+    }
+
+    /**
+     * Count to encode for {@code packet} instead of its own, or -1 to leave it
+     * alone.
+     */
+    public int countOverride(ParticleS2CPacket packet) {
+        for (int i = 0; i < this.bundled; i++) {
+            if (this.bundledParticles[i] == packet) {
+                return this.bundledOverrides[i];
+            }
+        }
+        return this.countOverride;
+    }
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) {
+        this.channel = ctx.channel();
+        this.encoding = this.channel.attr(ViaBrandTracker.PARTICLE_ENCODING);
+        this.status = this.channel.attr(ViaBrandTracker.PARTICLE_STATUS);
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        int countOverride = -1;
+        int bundled = 0;
+        if (msg instanceof ParticleS2CPacket particle) {
+            countOverride = filter(NoviaversionkickConfig.get(), particle);
+            if (countOverride == DROPPED) {
+                promise.trySuccess();
+                return;
+            }
+        } else if (msg instanceof BundleS2CPacket bundle) {
+            msg = filterBundle(bundle);
+            if (msg == null) {
+                promise.trySuccess();
+                return;
+            }
+            bundled = this.bundledPending;
+        } else {
+            ctx.write(msg, promise);
+            return;
+        }
+        ParticleEncodingHandler previous = ACTIVE.get();
+        int previousOverride = this.countOverride;
+        int previousBundled = this.bundled;
+        ACTIVE.set(this);
+        this.countOverride = countOverride;
+        this.bundled = bundled;
+        try {
+            ctx.write(msg, promise);
+        } finally {
+            // Do not keep bundled packets reachable once they are written.
+            Arrays.fill(this.bundledParticles, 0, bundled, null);
+            this.bundled = previousBundled;
+            this.countOverride = previousOverride;
+            ACTIVE.set(previous);
+        }
+    }
+
+    /**
+     * Runs every per-connection check on one particle. Returns {@link #DROPPED}
+     * after recording why, otherwise the count to encode or -1 for the packet's own.
+     */
+    private int filter(NoviaversionkickConfig config, ParticleS2CPacket particle) {
+        ParticleS2CPacketAccessor accessor = (ParticleS2CPacketAccessor) particle;
+        RecipientView view = config.lodEnabled || config.viewCullingEnabled ? RecipientView.get(this.channel) : null;
+        double distanceSq = view == null
+            ? Double.NaN
+            : view.distanceSq(accessor.noviaversionkick$getX(), accessor.noviaversionkick$getY(), accessor.noviaversionkick$getZ());
+        ParticleDropCounters.Reason reason = dropReason(config, particle, accessor, view, distanceSq);
+        if (reason != null) {
+            ParticleDropCounters.record(this.channel, reason);
+            return DROPPED;
+        }
+        if (config.duplicateFilterEnabled) {
+            // Only particles that passed every check count as sent.
+            duplicates(config).record(particle, config.duplicateQuantum, ServerTickClock.current());
+        }
+        return thinnedCount(config, accessor, distanceSq);
+    }
+
+    /**
+     * The unbundler sits behind this stage, so bundled particles are filtered here.
+     * Returns the bundle itself when nothing was dropped, a rebuilt bundle without
+     * the dropped particles, or null when none of its packets are left. Count
+     * overrides for the kept particles are left in {@link #bundledParticles}.
+     */
+    private BundleS2CPacket filterBundle(BundleS2CPacket bundle) {
+        NoviaversionkickConfig config = NoviaversionkickConfig.get();
+        List<Packet<? super ClientPlayPacketListener>> kept = null;
+        int index = 0;
+        int bundled = 0;
+        for (Packet<? super ClientPlayPacketListener> packet : bundle.getPackets()) {
+            if (packet instanceof ParticleS2CPacket particle) {
+                int countOverride = filter(config, particle);
+                if (countOverride == DROPPED) {
+                    if (kept == null) {
+                        kept = new ArrayList<>();
+                        for (Packet<? super ClientPlayPacketListener> earlier : bundle.getPackets()) {
+                            if (kept.size() == index) {
+                                break;
+                            }
+                            kept.add(earlier);
+                        }
+                    }
+                    index++;
+                    continue;
+                }
+                if (countOverride >= 0) {
+                    bundled = rememberBundled(bundled, particle, countOverride);
+                }
+            }
+            if (kept != null) {
+                kept.add(packet);
+            }
+            index++;
+        }
+        this.bundledPending = bundled;
+        if (kept == null) {
+            return bundle;
+        }
+        return kept.isEmpty() ? null : new BundleS2CPacket(kept);
+    }
+
+    private int rememberBundled(int bundled, ParticleS2CPacket particle, int countOverride) {
+        if (bundled == this.bundledParticles.length) {
+            int capacity = Math.max(8, bundled * 2);
+            this.bundledParticles = Arrays.copyOf(this.bundledParticles, capacity);
+            this.bundledOverrides = Arrays.copyOf(this.bundledOverrides, capacity);
+        }
+        this.bundledParticles[bundled] = particle;
+        this.bundledOverrides[bundled] = countOverride;
+        return bundled + 1;
+    }
+
+    /**
+     * {@code view} is null and {@code distanceSq} NaN when neither level of detail
+     * nor view culling is on, or the recipient has no snapshot yet.
+     */
+    private ParticleDropCounters.Reason dropReason(NoviaversionkickConfig config, ParticleS2CPacket particle, ParticleS2CPacketAccessor accessor,
+                                                   RecipientView view, double distanceSq) {
+        boolean legacy = encoding() == ParticleEncoding.LEGACY;
+        boolean forceSpawn = accessor.noviaversionkick$isForceSpawn();
+        if (legacy && isDroppedForLegacy(accessor.noviaversionkick$getParameters())) {
+            return ParticleDropCounters.Reason.POLICY;
+        }
+        int degradation = ParticleDegradation.level();
+        if (degradation == ParticleDegradation.NONE || degradation == ParticleDegradation.FORCED_ONLY && !forceSpawn) {
+            return ParticleDropCounters.Reason.OVERLOAD;
+        }
+        if (this.status.get() == ParticlesMode.MINIMAL && !forceSpawn && config.respectParticleStatus) {
+            return ParticleDropCounters.Reason.CLIENT_SETTING;
+        }
+        double cutoff = forceSpawn ? config.lodForcedCutoffDistance : config.lodCutoffDistance;
+        if (config.lodEnabled && distanceSq > cutoff * cutoff) {
+            return ParticleDropCounters.Reason.DISTANCE;
+        }
+        if (!forceSpawn
+            && config.viewCullingEnabled
+            && distanceSq > config.viewCullingNearRadius * config.viewCullingNearRadius
+            && view.isBehind(accessor.noviaversionkick$getX(), accessor.noviaversionkick$getY(), accessor.noviaversionkick$getZ(), distanceSq, config.viewCullingMinCos)) {
+            return ParticleDropCounters.Reason.VIEW;
+        }
+        if (config.duplicateFilterEnabled && duplicates(config).contains(particle, config.duplicateQuantum, ServerTickClock.current())) {
+            return ParticleDropCounters.Reason.DUPLICATE;
+        }
+        // Above the high-water mark anything queued now only delays chunk and entity
+        // packets; cosmetic particles are the first thing worth shedding.
+        if (!this.channel.isWritable()
+            && config.dropParticlesWhenUnwritable
+            && !forceSpawn) {
+            return ParticleDropCounters.Reason.BACKPRESSURE;
+        }
+        if (!ParticleBudget.allow(this.channel, legacy, particle)) {
+            return ParticleDropCounters.Reason.BUDGET;
+        }
+        return null;
+    }
+
+    private DuplicateParticleFilter duplicates(NoviaversionkickConfig config) {
+        // Sized from the config seen on first use; a reload applies to new connections.
+        if (this.duplicates == null) {
+            this.duplicates = DuplicateParticleFilter.create(config);
+        }
+        return this.duplicates;
+    }
+
+    private int thinnedCount(NoviaversionkickConfig config, ParticleS2CPacketAccessor accessor, double distanceSq) {
+        int count = accessor.noviaversionkick$getCount();
+        // A zero count is one particle with offsets as velocity; nothing to thin.
+        if (count <= 1) {
+            return -1;
+        }
+        double fraction = 1.0D;
+        if (config.respectParticleStatus && this.status.get() == ParticlesMode.DECREASED && !accessor.noviaversionkick$isForceSpawn()) {
+            fraction = config.decreasedParticleFraction;
+        }
+        if (ParticleDegradation.level() == ParticleDegradation.DOWNSAMPLED) {
+            fraction *= config.adaptiveDownsampleFraction;
+        }
+        double fullSq = config.lodFullDistance * config.lodFullDistance;
+        if (config.lodEnabled && distanceSq > fullSq) {
+            fraction *= Math.max(config.lodMinFraction, Math.pow(fullSq / distanceSq, config.lodFalloff));
+        }
+        if (fraction >= 1.0D) {
+            return -1;
+        }
+        int thinned = (int) Math.max(1L, Math.round(count * fraction));
+        return thinned < count ? thinned : -1;
+    }
+
+    private static boolean isDroppedForLegacy(ParticleEffect effect) {
+        if (effect == null) {
+            return false;
+        }
+        ParticleType<?> type = effect.getType();
+        return ParticlePolicyTable.current().action(type, ParticlePolicyTable.rawId(type)) == ParticleAction.DROP;
+    }
+}
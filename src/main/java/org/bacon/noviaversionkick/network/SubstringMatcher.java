@@ -0,0 +1,123 @@
+package org.bacon.noviaversionkick.network;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Queue;
+
+/**
+ * Aho-Corasick automaton over ASCII, case-insensitive. Each pattern carries a
+ * mask; {@link #match} returns the union of the masks of every pattern that
+ * occurs in the input, in one pass over it regardless of how many patterns there
+ * are. Non-ASCII input characters never match, since patterns are ASCII only.
+ */
+final class SubstringMatcher {
+    private static final int ALPHABET = 128;
+    static final SubstringMatcher EMPTY = new Builder().build();
+
+    private final int[] transitions;
+    private final long[] outputs;
+
+    private SubstringMatcher(int[] transitions, long[] outputs) {
+        this.transitions = transitions;
+        this.outputs = outputs;
+    }
+
+    long match(CharSequence input) {
+        if (this.outputs.length == 1) {
+            return 0L;
+        }
+        int state = 0;
+        long matched = 0L;
+        for (int i = 0, length = input.length(); i < length; i++) {
+            char c = input.charAt(i);
+            if (c >= ALPHABET) {
+                state = 0;
+                continue;
+            }
+            state = this.transitions[state * ALPHABET + fold(c)];
+            matched |= this.outputs[state];
+        }
+        return matched;
+    }
+
+    static boolean isSupported(String pattern) {
+        if (pattern.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < pattern.length(); i++) {
+            if (pattern.charAt(i) >= ALPHABET) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int fold(char c) {
+        return c >= 'A' && c <= 'Z' ? c + ('a' - 'A') : c;
+    }
+
+    static final class Builder {
+        private int[] transitions = newRow(new int[0], 0);
+        private long[] outputs = new long[1];
+        private int states = 1;
+
+        /**
+         * Adds a pattern; callers check {@link #isSupported} first.
+         */
+        Builder add(String pattern, long mask) {
+            int state = 0;
+            for (int i = 0; i < pattern.length(); i++) {
+                int c = fold(pattern.charAt(i));
+                int next = this.transitions[state * ALPHABET + c];
+                if (next < 0) {
+                    next = this.states++;
+                    this.transitions = newRow(this.transitions, next);
+                    this.outputs = Arrays.copyOf(this.outputs, this.states);
+                    this.transitions[state * ALPHABET + c] = next;
+                }
+                state = next;
+            }
+            this.outputs[state] |= mask;
+            return this;
+        }
+
+        SubstringMatcher build() {
+            int[] delta = Arrays.copyOf(this.transitions, this.states * ALPHABET);
+            long[] out = Arrays.copyOf(this.outputs, this.states);
+            int[] fail = new int[this.states];
+            Queue<Integer> queue = new ArrayDeque<>();
+            for (int c = 0; c < ALPHABET; c++) {
+                int child = delta[c];
+                if (child < 0) {
+                    delta[c] = 0;
+                } else {
+                    fail[child] = 0;
+                    queue.add(child);
+                }
+            }
+            // Breadth first, so every state's failure target is complete before
+            // its children borrow transitions and outputs from it.
+            while (!queue.isEmpty()) {
+                int state = queue.remove();
+                out[state] |= out[fail[state]];
+                for (int c = 0; c < ALPHABET; c++) {
+                    int child = delta[state * ALPHABET + c];
+                    int fallback = delta[fail[state] * ALPHABET + c];
+                    if (child < 0) {
+                        delta[state * ALPHABET + c] = fallback;
+                    } else {
+                        fail[child] = fallback;
+                        queue.add(child);
+                    }
+                }
+            }
+            return new SubstringMatcher(delta, out);
+        }
+
+        private static int[] newRow(int[] transitions, int state) {
+            int[] grown = Arrays.copyOf(transitions, (state + 1) * ALPHABET);
+            Arrays.fill(grown, state * ALPHABET, grown.length, -1);
+            return grown;
+        }
+    }
+}
@@ -1,29 +1,53 @@
 package org.bacon.noviaversionkick.network;
 
+import io.netty.channel.Channel;
+import io.netty.util.AttributeKey;
 import net.minecraft.network.ClientConnection;
-import org.apache.logging.log4j.LogManager;
+import net.minecraft.particle.ParticlesMode;
 import org.apache.logging.log4j.Logger;
+import org.bacon.noviaversionkick.log.ModLogger;
+import org.bacon.noviaversionkick.mixin.ClientConnectionAccessor;
 
-import java.net.SocketAddress;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.LinkedHashSet;
-import java.util.Locale;
 import java.util.Map;
-import java.util.Set;
-import java.util.WeakHashMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Tracks information about connected clients so that we can tailor the packets
  * that are sent to them.
  */
 public final class ViaBrandTracker {
-    private static final Logger LOGGER = LogManager.getLogger("Noviaversionkick");
-    private static final Map<ClientConnection, ClientInfo> CLIENTS = Collections.synchronizedMap(new WeakHashMap<>());
+    private static final Logger LOGGER = ModLogger.get();
+    private static final Map<ClientConnection, ClientInfo> CLIENTS = new ConcurrentHashMap<>();
+    /**
+     * Decision published on the connection's channel whenever the brand or mod
+     * list changes; the particle encoder only ever reads this attribute.
+     */
+    public static final AttributeKey<ParticleEncoding> PARTICLE_ENCODING = AttributeKey.valueOf("noviaversionkick:particle_encoding");
+    private static final AttributeKey<UUID> PLAYER_ID = AttributeKey.valueOf("noviaversionkick:player_id");
+    /**
+     * Open connections whose published decision is legacy. Every change to the
+     * attribute goes through {@link #countTransition}, so this is exact.
+     */
+    private static final AtomicInteger LEGACY_CONNECTIONS = new AtomicInteger();
+    /**
+     * Particle setting the client last reported in its options; absent until the
+     * first options packet.
+     */
+    public static final AttributeKey<ParticlesMode> PARTICLE_STATUS = AttributeKey.valueOf("noviaversionkick:particle_status");
+    /** Open connections whose reported particle setting is below {@code ALL}; kept like {@link #LEGACY_CONNECTIONS}. */
+    private static final AtomicInteger REDUCED_CONNECTIONS = new AtomicInteger();
+
     private ViaBrandTracker() {
     }
 
     public static void setBrand(ClientConnection connection, String brand) {
+        setBrand(connection, channelOf(connection), brand);
+    }
+
+    static void setBrand(ClientConnection connection, Channel channel, String brand) {
         // Downgrade noisy logs to DEBUG
         LOGGER.debug(
             "setBrand called for connection={} with brand='{}'",
@@ -34,44 +58,53 @@ public final class ViaBrandTracker {
             LOGGER.debug("Ignoring setBrand call because connection was null");
             return;
         }
-        synchronized (CLIENTS) {
+        if (brand == null) {
             ClientInfo info = CLIENTS.get(connection);
-            if (brand == null) {
-                if (info != null) {
-                    LOGGER.debug("Clearing client brand for {}", describeConnection(connection));
-                    info.setBrand(null);
-                    info.resetLegacyDecisionLog();
-                    if (info.isEmpty()) {
-                        LOGGER.debug("No remaining data for {}; removing client entry", describeConnection(connection));
-                        CLIENTS.remove(connection);
-                    }
-                } else {
-                    LOGGER.debug("No brand information stored for {}; nothing to clear", describeConnection(connection));
-                }
+            if (info == null) {
+                LOGGER.debug("No brand information stored for {}; nothing to clear", describeConnection(connection));
                 return;
             }
-            String sanitized = brand.strip();
-            LOGGER.debug(
-                "Raw brand payload received from {}: '{}'",
-                describeConnection(connection),
-                brand
-            );
-            if (info == null) {
-                LOGGER.debug("Creating new tracking entry for {}", describeConnection(connection));
-                info = new ClientInfo();
-                CLIENTS.put(connection, info);
+            synchronized (info) {
+                if (info.isRemoved()) {
+                    return;
+                }
+                LOGGER.debug("Clearing client brand for {}", describeConnection(connection));
+                info.setBrand(null);
+                removeIfEmpty(connection, info);
+                publishDecision(connection, channel, info);
+            }
+            return;
+        }
+        String sanitized = brand.strip();
+        LOGGER.debug(
+            "Raw brand payload received from {}: '{}'",
+            describeConnection(connection),
+            brand
+        );
+        while (true) {
+            ClientInfo info = trackedInfo(connection);
+            synchronized (info) {
+                if (info.isRemoved()) {
+                    continue;
+                }
+                info.setBrand(sanitized);
+                LOGGER.debug(
+                    "Recorded sanitized client brand '{}' for {}",
+                    sanitized,
+                    describeConnection(connection)
+                );
+                publishDecision(connection, channel, info);
+                dropIfDisconnected(connection, channel);
+                return;
             }
-            info.setBrand(sanitized);
-            info.resetLegacyDecisionLog();
-            LOGGER.debug(
-                "Recorded sanitized client brand '{}' for {}",
-                sanitized,
-                describeConnection(connection)
-            );
         }
     }
 
     public static void setClientModList(ClientConnection connection, Collection<String> mods) {
+        setClientModList(connection, channelOf(connection), mods);
+    }
+
+    static void setClientModList(ClientConnection connection, Channel channel, Collection<String> mods) {
         LOGGER.debug(
             "setClientModList called for connection={} with {} mods",
             describeConnection(connection),
@@ -81,196 +114,284 @@ public final class ViaBrandTracker {
             LOGGER.debug("Ignoring setClientModList call because connection was null");
             return;
         }
-        synchronized (CLIENTS) {
+        if (mods == null) {
             ClientInfo info = CLIENTS.get(connection);
-            if (mods == null) {
-                if (info != null) {
-                    LOGGER.debug("Clearing client mod list for {}", describeConnection(connection));
-                    info.setClientMods(null);
-                    info.resetLegacyDecisionLog();
-                    if (info.isEmpty()) {
-                        LOGGER.debug("No remaining data for {}; removing client entry", describeConnection(connection));
-                        CLIENTS.remove(connection);
-                    }
-                } else {
-                    LOGGER.debug("No mod list stored for {}; nothing to clear", describeConnection(connection));
+            if (info == null) {
+                LOGGER.debug("No mod list stored for {}; nothing to clear", describeConnection(connection));
+                return;
+            }
+            synchronized (info) {
+                if (info.isRemoved()) {
+                    return;
+                }
+                LOGGER.debug("Clearing client mod list for {}", describeConnection(connection));
+                info.setClientMods(null);
+                removeIfEmpty(connection, info);
+                publishDecision(connection, channel, info);
+            }
+            return;
+        }
+        while (true) {
+            ClientInfo info = trackedInfo(connection);
+            synchronized (info) {
+                if (info.isRemoved()) {
+                    continue;
+                }
+                info.setClientMods(mods);
+                if (ModLogger.isDebugEnabled()) {
+                    LOGGER.debug(
+                        "Recorded {} client mods for {}: {}",
+                        info.describeClientModCount(),
+                        describeConnection(connection),
+                        info.describeClientMods()
+                    );
                 }
+                publishDecision(connection, channel, info);
+                dropIfDisconnected(connection, channel);
                 return;
             }
-            if (info == null) {
-                LOGGER.debug("Creating new tracking entry for {} to store mod list", describeConnection(connection));
-                info = new ClientInfo();
-                CLIENTS.put(connection, info);
+        }
+    }
+
+    /**
+     * Records the particle setting from a client options packet, sent during
+     * configuration and again whenever the player changes it.
+     */
+    public static void setParticleStatus(ClientConnection connection, ParticlesMode status) {
+        Channel channel = channelOf(connection);
+        if (channel == null || status == null) {
+            return;
+        }
+        ParticlesMode previous = channel.attr(PARTICLE_STATUS).getAndSet(status);
+        countStatusTransition(previous, status);
+        if (!connection.isOpen()) {
+            retract(channel);
+            return;
+        }
+        if (previous != status) {
+            LOGGER.debug("Client {} reports particle setting {}", describeConnection(connection), status);
+        }
+    }
+
+    /**
+     * Binds the player's UUID to the connection once it is known. Unless the
+     * connection was already classified, the encoding remembered for the player is
+     * published straight away; the brand confirms or replaces it when it arrives.
+     */
+    public static void preseed(ClientConnection connection, UUID player) {
+        Channel channel = channelOf(connection);
+        if (channel == null || player == null) {
+            return;
+        }
+        channel.attr(PLAYER_ID).set(player);
+        ParticleEncoding decided = channel.attr(PARTICLE_ENCODING).get();
+        if (decided != null) {
+            // Classified during login (mod list); remember that instead.
+            ClientFingerprintStore.record(player, decided);
+            return;
+        }
+        ParticleEncoding remembered = ClientFingerprintStore.lookup(player);
+        if (remembered == null) {
+            return;
+        }
+        decided = channel.attr(PARTICLE_ENCODING).setIfAbsent(remembered);
+        if (decided == null) {
+            countTransition(null, remembered);
+            if (!connection.isOpen()) {
+                // Lost a race with channelInactive, which has already retracted.
+                retract(channel);
             }
-            info.setClientMods(mods);
-            info.resetLegacyDecisionLog();
-            LOGGER.debug(
-                "Recorded {} client mods for {}: {}",
-                info.describeClientModCount(),
-                describeConnection(connection),
-                info.describeClientMods()
-            );
         }
+        LOGGER.debug(
+            "Pre-seeded {} particle encoding for {} from the fingerprint store{}",
+            remembered == ParticleEncoding.LEGACY ? "legacy" : "modern",
+            describeConnection(connection),
+            decided == null ? "" : " (superseded by a concurrent decision)"
+        );
     }
 
-    public static boolean shouldUseLegacyParticles(ClientConnection connection) {
+    /**
+     * Forgets everything stored for a connection. Called when its channel goes
+     * inactive so entries never linger until the connection is collected.
+     */
+    public static void removeClient(ClientConnection connection) {
+        removeClient(connection, channelOf(connection));
+    }
+
+    static void removeClient(ClientConnection connection, Channel channel) {
         if (connection == null) {
-            return false;
+            return;
         }
-        ClientInfo info;
-        LOGGER.debug("Evaluating particle encoding strategy for {}", describeConnection(connection));
-        synchronized (CLIENTS) {
-            info = CLIENTS.get(connection);
+        ClientInfo info = CLIENTS.remove(connection);
+        if (info != null) {
+            synchronized (info) {
+                info.markRemoved();
+            }
+            LOGGER.debug("Removed client entry for disconnected {}", describeConnection(connection));
         }
-        if (info == null) {
-            LOGGER.debug("No client info stored for {}; defaulting to modern particles", describeConnection(connection));
-            return false;
+        // After markRemoved, so no tracker update can publish for this connection again.
+        retract(channel);
+    }
+
+    private static ClientInfo trackedInfo(ClientConnection connection) {
+        return CLIENTS.computeIfAbsent(connection, key -> {
+            LOGGER.debug("Creating new tracking entry for {}", describeConnection(key));
+            return new ClientInfo();
+        });
+    }
+
+    private static void removeIfEmpty(ClientConnection connection, ClientInfo info) {
+        if (info.isEmpty()) {
+            LOGGER.debug("No remaining data for {}; removing client entry", describeConnection(connection));
+            info.markRemoved();
+            CLIENTS.remove(connection, info);
         }
-        return info.shouldUseLegacyParticles(connection);
     }
 
-    private static String describeConnection(ClientConnection connection) {
-        if (connection == null) {
-            return "unknown";
+    private static void dropIfDisconnected(ClientConnection connection, Channel channel) {
+        // A payload handled after channelInactive would otherwise recreate an entry nobody removes.
+        if (!connection.isOpen()) {
+            removeClient(connection, channel);
         }
-        SocketAddress address = connection.getAddress();
-        return address != null ? address.toString() : "unknown";
+    }
+
+    /**
+     * False while no open connection uses legacy encoding; a single volatile read.
+     */
+    public static boolean hasLegacyConnections() {
+        return LEGACY_CONNECTIONS.get() != 0;
+    }
+
+    /**
+     * False while every open connection renders all particles; a single volatile read.
+     */
+    public static boolean hasReducedParticleConnections() {
+        return REDUCED_CONNECTIONS.get() != 0;
+    }
+
+    public static boolean shouldUseLegacyParticles(ClientConnection connection) {
+        return connection != null && shouldUseLegacyParticles(channelOf(connection));
+    }
+
+    public static boolean shouldUseLegacyParticles(Channel channel) {
+        return channel != null && channel.attr(PARTICLE_ENCODING).get() == ParticleEncoding.LEGACY;
+    }
+
+    private static Channel channelOf(ClientConnection connection) {
+        return connection == null ? null : ((ClientConnectionAccessor) connection).noviaversionkick$getChannel();
+    }
+
+    private static void publishDecision(ClientConnection connection, Channel channel, ClientInfo info) {
+        ParticleEncoding encoding = info.refreshEncoding(connection);
+        if (channel == null) {
+            LOGGER.debug("No channel available for {}; particle encoding decision not published", describeConnection(connection));
+            return;
+        }
+        countTransition(channel.attr(PARTICLE_ENCODING).getAndSet(encoding), encoding);
+        UUID player = channel.attr(PLAYER_ID).get();
+        if (player != null) {
+            ClientFingerprintStore.record(player, encoding);
+        }
+    }
+
+    private static void retract(Channel channel) {
+        if (channel != null) {
+            countTransition(channel.attr(PARTICLE_ENCODING).getAndSet(null), null);
+            countStatusTransition(channel.attr(PARTICLE_STATUS).getAndSet(null), null);
+        }
+    }
+
+    private static void countTransition(ParticleEncoding previous, ParticleEncoding next) {
+        boolean wasLegacy = previous == ParticleEncoding.LEGACY;
+        boolean isLegacy = next == ParticleEncoding.LEGACY;
+        if (wasLegacy != isLegacy) {
+            LEGACY_CONNECTIONS.addAndGet(isLegacy ? 1 : -1);
+        }
+    }
+
+    private static void countStatusTransition(ParticlesMode previous, ParticlesMode next) {
+        boolean wasReduced = previous != null && previous != ParticlesMode.ALL;
+        boolean isReduced = next != null && next != ParticlesMode.ALL;
+        if (wasReduced != isReduced) {
+            REDUCED_CONNECTIONS.addAndGet(isReduced ? 1 : -1);
+        }
+    }
+
+    private static String describeConnection(ClientConnection connection) {
+        return ModLogger.describe(connection);
     }
 
     private static final class ClientInfo {
         private volatile String brand;
-        private volatile Set<String> clientMods;
-        private volatile Boolean lastLegacyDecision;
+        private volatile ClientModSet clientMods;
+        private ParticleEncoding encoding;
+        private boolean removed;
 
         void setBrand(String brand) {
             this.brand = brand;
         }
 
         void setClientMods(Collection<String> mods) {
-            if (mods == null || mods.isEmpty()) {
-                this.clientMods = null;
-                return;
-            }
-            Set<String> normalized = new LinkedHashSet<>();
-            for (String mod : mods) {
-                if (mod == null) {
-                    continue;
-                }
-                String trimmed = mod.trim();
-                if (trimmed.isEmpty()) {
-                    continue;
-                }
-                normalized.add(trimmed.toLowerCase(Locale.ROOT));
-            }
-            this.clientMods = normalized.isEmpty() ? null : normalized;
+            this.clientMods = ClientModSet.of(mods);
         }
 
-        synchronized boolean shouldUseLegacyParticles(ClientConnection connection) {
-            boolean legacy = computeLegacyDecision(connection);
-            Boolean previousDecision = this.lastLegacyDecision;
-            if (previousDecision == null || previousDecision != legacy) {
-                this.lastLegacyDecision = legacy;
-                if (legacy) {
-                    LOGGER.debug(
-                        "Using legacy particle encoding for {} (brand='{}')",
-                        describeConnection(connection),
-                        this.brand
-                    );
-                } else {
-                    LOGGER.debug(
-                        "Using modern particle encoding for {} (brand='{}')",
-                        describeConnection(connection),
-                        this.brand
-                    );
-                }
+        synchronized ParticleEncoding refreshEncoding(ClientConnection connection) {
+            ParticleEncoding encoding = computeEncoding(connection);
+            ParticleEncoding previous = this.encoding;
+            this.encoding = encoding;
+            if (previous != encoding) {
+                LOGGER.debug(
+                    "Using {} particle encoding for {} (brand='{}')",
+                    encoding == ParticleEncoding.LEGACY ? "legacy" : "modern",
+                    describeConnection(connection),
+                    this.brand
+                );
             }
-            return legacy;
+            return encoding;
+        }
+
+        boolean isRemoved() {
+            return this.removed;
         }
 
-        void resetLegacyDecisionLog() {
-            this.lastLegacyDecision = null;
+        void markRemoved() {
+            this.removed = true;
         }
 
         boolean isEmpty() {
-            return this.brand == null && (this.clientMods == null || this.clientMods.isEmpty());
+            return this.brand == null && this.clientMods == null;
         }
 
         String describeClientModCount() {
-            Set<String> mods = this.clientMods;
+            ClientModSet mods = this.clientMods;
             return mods == null ? "0" : Integer.toString(mods.size());
         }
 
         String describeClientMods() {
-            Set<String> mods = this.clientMods;
-            if (mods == null || mods.isEmpty()) {
-                return "[]";
-            }
-            return mods.toString();
+            ClientModSet mods = this.clientMods;
+            return mods == null ? "[]" : mods.toString();
         }
 
-        private boolean computeLegacyDecision(ClientConnection connection) {
-            boolean fabricBrand = brandIndicatesFabric(this.brand);
-            boolean fabricMods = modsIndicateFabric(this.clientMods);
+        private ParticleEncoding computeEncoding(ClientConnection connection) {
+            ClientRule rule = ClientRules.current().decide(this.brand, this.clientMods);
+            ParticleEncoding encoding = rule == null ? ParticleEncoding.MODERN : rule.encoding();
 
-            LOGGER.debug(
-                "Evaluating platform for {}: brandIndicatesFabric={}, modsIndicateFabric={}",
-                describeConnection(connection),
-                fabricBrand,
-                fabricMods
-            );
-
-            if (fabricBrand || fabricMods) {
-                LOGGER.debug(
-                    "Assuming Fabric client for {}; legacy particle encoding will be used",
-                    describeConnection(connection)
-                );
-                return true;
-            }
-
-            LOGGER.debug(
-                "Fabric indicators not detected for {}; modern particles will be used",
-                describeConnection(connection)
-            );
-            return false;
-        }
-
-        private static boolean brandIndicatesFabric(String brand) {
-            if (brand == null) {
-                return false;
-            }
-            String sanitized = brand.trim();
-            if (sanitized.isEmpty()) {
-                return false;
-            }
-            String[] fragments = sanitized.split("\\u0000");
-            for (String fragment : fragments) {
-                if (fragment == null) {
-                    continue;
-                }
-                String normalized = fragment.trim().toLowerCase(Locale.ROOT);
-                if (normalized.isEmpty()) {
-                    continue;
-                }
-                if (normalized.contains("fabric")) {
-                    return true;
-                }
-            }
-            return false;
-        }
-
-        private static boolean modsIndicateFabric(Set<String> mods) {
-            if (mods == null || mods.isEmpty()) {
-                return false;
-            }
-            if (mods.contains("fabricloader")) {
-                return true;
-            }
-            for (String mod : mods) {
-                if (mod != null && mod.contains("fabric")) {
-                    return true;
+            if (ModLogger.isDebugEnabled()) {
+                if (rule != null) {
+                    LOGGER.debug(
+                        "Client rule '{}' matched {}; {} particle encoding will be used",
+                        rule.name(),
+                        describeConnection(connection),
+                        rule.encoding() == ParticleEncoding.LEGACY ? "legacy" : "modern"
+                    );
+                } else {
+                    LOGGER.debug(
+                        "No client rule matched {}; modern particles will be used",
+                        describeConnection(connection)
+                    );
                 }
             }
-            return false;
+            return encoding;
         }
     }
 }
@@ -0,0 +1,115 @@
+package org.bacon.noviaversionkick.particle;
+
+import net.minecraft.network.packet.s2c.play.ParticleS2CPacket;
+import org.bacon.noviaversionkick.config.NoviaversionkickConfig;
+import org.bacon.noviaversionkick.mixin.ParticleS2CPacketAccessor;
+
+import java.util.Arrays;
+
+/**
+ * Remembers which particles a connection was sent over the last few ticks so
+ * repeats of the same effect at (nearly) the same spot can be dropped. Keys are
+ * 64-bit hashes of raw type id, effect payload (block state, dust colour and
+ * scale, item), position quantised to {@code duplicates.quantum} and
+ * {@code forceSpawn}, kept in a ring of per-tick open-addressing tables sized
+ * once from {@code duplicates.maxBytesPerConnection}. A full table stops
+ * accepting keys for the rest of its tick rather than growing, and the window is
+ * shortened when the cap cannot hold a minimal table per tick.
+ * <p>
+ * Owned by one channel's particle stage and only used on its event loop.
+ */
+public final class DuplicateParticleFilter {
+    private static final long EMPTY = 0L;
+    private static final int MIN_CAPACITY = 16;
+    private static final int MAX_CAPACITY = 1 << 20;
+
+    private final long[][] buckets;
+    private final long[] bucketTicks;
+    private final int[] sizes;
+    private final int mask;
+    private final int maxSize;
+
+    private DuplicateParticleFilter(int window, int capacity) {
+        this.buckets = new long[window][capacity];
+        this.bucketTicks = new long[window];
+        // Far enough in the past that {@code tick - bucketTick} cannot overflow.
+        Arrays.fill(this.bucketTicks, Long.MIN_VALUE / 2);
+        this.sizes = new int[window];
+        this.mask = capacity - 1;
+        this.maxSize = capacity - (capacity >> 2);
+    }
+
+    public static DuplicateParticleFilter create(NoviaversionkickConfig config) {
+        // Every tick gets at least MIN_CAPACITY slots; shorten the window rather
+        // than exceed the memory cap when the cap cannot hold that many ticks.
+        int maxBytes = config.duplicateMaxBytesPerConnection;
+        int window = Math.max(1, Math.min(config.duplicateWindowTicks, maxBytes / (Long.BYTES * MIN_CAPACITY)));
+        int perBucket = Math.min(MAX_CAPACITY, maxBytes / Long.BYTES / window);
+        return new DuplicateParticleFilter(window, Integer.highestOneBit(Math.max(MIN_CAPACITY, perBucket)));
+    }
+
+    /**
+     * Whether an equivalent particle was already sent within the window. Does not
+     * record this one; see {@link #record}.
+     */
+    public boolean contains(ParticleS2CPacket packet, double quantum, long tick) {
+        long key = key((ParticleS2CPacketAccessor) packet, quantum);
+        int window = this.buckets.length;
+        for (int i = 0; i < window; i++) {
+            if (tick - this.bucketTicks[i] < window && probe(this.buckets[i], key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Remembers a particle that is actually being sent.
+     */
+    public void record(ParticleS2CPacket packet, double quantum, long tick) {
+        long key = key((ParticleS2CPacketAccessor) packet, quantum);
+        int current = (int) Math.floorMod(tick, (long) this.buckets.length);
+        if (this.bucketTicks[current] != tick) {
+            Arrays.fill(this.buckets[current], EMPTY);
+            this.bucketTicks[current] = tick;
+            this.sizes[current] = 0;
+        }
+        if (this.sizes[current] < this.maxSize && put(this.buckets[current], key)) {
+            this.sizes[current]++;
+        }
+    }
+
+    private boolean probe(long[] table, long key) {
+        for (int slot = (int) key & this.mask; ; slot = (slot + 1) & this.mask) {
+            long stored = table[slot];
+            if (stored == key) {
+                return true;
+            }
+            if (stored == EMPTY) {
+                return false;
+            }
+        }
+    }
+
+    private boolean put(long[] table, long key) {
+        int slot = (int) key & this.mask;
+        while (table[slot] != EMPTY) {
+            if (table[slot] == key) {
+                return false;
+            }
+            slot = (slot + 1) & this.mask;
+        }
+        table[slot] = key;
+        return true;
+    }
+
+    private static long key(ParticleS2CPacketAccessor packet, double quantum) {
+        long hash = ParticleEffectKey.digest(packet.noviaversionkick$getParameters());
+        hash = (hash ^ (long) Math.floor(packet.noviaversionkick$getX() / quantum)) * 0xC2B2AE3D27D4EB4FL;
+        hash = (hash ^ (long) Math.floor(packet.noviaversionkick$getY() / quantum)) * 0x165667B19E3779F9L;
+        hash = (hash ^ (long) Math.floor(packet.noviaversionkick$getZ() / quantum)) * 0x94D049BB133111EBL;
+        hash ^= packet.noviaversionkick$isForceSpawn() ? 1L : 0L;
+        hash ^= hash >>> 31;
+        return hash == EMPTY ? 1L : hash;
+    }
+}
@@ -0,0 +1,108 @@
+package org.bacon.noviaversionkick.particle;
+
+import net.minecraft.network.RegistryByteBuf;
+import net.minecraft.particle.ParticleEffect;
+import net.minecraft.particle.ParticleTypes;
+
+/**
+ * Writes particle packets in the layout Via-translated Fabric clients expect:
+ * type id and header first, followed by the effect payload. Everything is written
+ * straight into the destination buffer.
+ */
+public final class LegacyParticleWriter {
+    private static final double SURFACE_THRESHOLD = 0.3D;
+    private static final double AXIS_EPSILON = 1.0E-6D;
+
+    private LegacyParticleWriter() {
+    }
+
+    public static void write(
+        RegistryByteBuf buf,
+        ParticleEffect effect,
+        boolean forceSpawn,
+        double x,
+        double y,
+        double z,
+        float offsetX,
+        float offsetY,
+        float offsetZ,
+        float speed,
+        int count
+    ) {
+        if (effect == null) {
+            return;
+        }
+        ParticlePolicyTable policy = ParticlePolicyTable.current();
+        int rawId = ParticlePolicyTable.rawId(effect.getType());
+        ParticleAction action = policy.action(effect.getType(), rawId);
+        if (action == ParticleAction.SUBSTITUTE || action == ParticleAction.DROP) {
+            // Dropped types should be filtered before encoding; if one gets this
+            // far, the inert substitute is the safest thing to put on the wire.
+            writeSuppressed(buf, policy.substituteId(), x, y, z);
+            return;
+        }
+        // The header does not depend on the payload, so the effect can follow it
+        // directly instead of being staged in a scratch buffer.
+        buf.writeVarInt(rawId);
+        buf.writeBoolean(forceSpawn);
+        if (action == ParticleAction.ALIGN_TO_SURFACE) {
+            writeAlignedPosition(buf, x, y, z);
+        } else {
+            buf.writeDouble(x);
+            buf.writeDouble(y);
+            buf.writeDouble(z);
+        }
+        buf.writeFloat(offsetX);
+        buf.writeFloat(offsetY);
+        buf.writeFloat(offsetZ);
+        buf.writeFloat(speed);
+        buf.writeInt(count);
+        ParticleTypes.PACKET_CODEC.encode(buf, effect);
+    }
+
+    private static void writeSuppressed(RegistryByteBuf buf, int fallbackId, double x, double y, double z) {
+        buf.writeVarInt(fallbackId);
+        buf.writeBoolean(false);
+        buf.writeDouble(x);
+        buf.writeDouble(y);
+        buf.writeDouble(z);
+        buf.writeFloat(0.0F);
+        buf.writeFloat(0.0F);
+        buf.writeFloat(0.0F);
+        buf.writeFloat(0.0F);
+        buf.writeInt(0);
+    }
+
+    private static void writeAlignedPosition(RegistryByteBuf buf, double x, double y, double z) {
+        double posX = x;
+        double posY = y;
+        double posZ = z;
+
+        double baseX = Math.floor(posX);
+        double baseY = Math.floor(posY);
+        double baseZ = Math.floor(posZ);
+
+        double fractionalX = posX - baseX;
+        double fractionalY = posY - baseY;
+        double fractionalZ = posZ - baseZ;
+
+        double distanceX = Math.min(fractionalX, 1.0D - fractionalX);
+        double distanceY = Math.min(fractionalY, 1.0D - fractionalY);
+        double distanceZ = Math.min(fractionalZ, 1.0D - fractionalZ);
+
+        double nearest = Math.min(distanceX, Math.min(distanceY, distanceZ));
+        if (nearest <= SURFACE_THRESHOLD) {
+            if (distanceX <= nearest + AXIS_EPSILON) {
+                posX = baseX + (fractionalX < 0.5D ? 0.0D : 1.0D);
+            } else if (distanceY <= nearest + AXIS_EPSILON) {
+                posY = baseY + (fractionalY < 0.5D ? 0.0D : 1.0D);
+            } else {
+                posZ = baseZ + (fractionalZ < 0.5D ? 0.0D : 1.0D);
+            }
+        }
+
+        buf.writeDouble(posX);
+        buf.writeDouble(posY);
+        buf.writeDouble(posZ);
+    }
+}
@@ -0,0 +1,15 @@
+package org.bacon.noviaversionkick.particle;
+
+/**
+ * What the legacy encoder does with a particle type.
+ */
+public enum ParticleAction {
+    /** Written unchanged. */
+    PASS,
+    /** Block-state particle whose position is snapped onto the nearest block face. */
+    ALIGN_TO_SURFACE,
+    /** Replaced by the table's substitute particle with a zero count. */
+    SUBSTITUTE,
+    /** Never sent to legacy clients. */
+    DROP
+}
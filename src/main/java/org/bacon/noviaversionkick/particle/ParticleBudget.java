@@ -0,0 +1,74 @@
+package org.bacon.noviaversionkick.particle;
+
+import io.netty.channel.Channel;
+import io.netty.util.Attribute;
+import io.netty.util.AttributeKey;
+import net.minecraft.network.packet.s2c.play.ParticleS2CPacket;
+import org.bacon.noviaversionkick.config.NoviaversionkickConfig;
+import org.bacon.noviaversionkick.mixin.ParticleS2CPacketAccessor;
+
+/**
+ * Per-connection token buckets limiting particle bytes and packets per second.
+ * Checked on the connection's event loop right before a particle packet is
+ * written, so a bucket is only ever touched by one thread. Legacy-encoded clients
+ * get their own rates.
+ */
+public final class ParticleBudget {
+    private static final AttributeKey<ParticleBudget> KEY = AttributeKey.valueOf("noviaversionkick:particle_budget");
+    /** Header plus a small effect payload, used until a packet's real size is cached. */
+    private static final int ESTIMATED_PACKET_BYTES = 64;
+    private static final double NANOS_PER_SECOND = 1.0E9D;
+
+    private double byteTokens = Double.NaN;
+    private double packetTokens;
+    private long lastRefill;
+
+    private ParticleBudget() {
+    }
+
+    /**
+     * Charges the packet against the channel's budget. Forced particles are always
+     * allowed but still consume tokens; others are rejected once a bucket is empty.
+     */
+    public static boolean allow(Channel channel, boolean legacy, ParticleS2CPacket packet) {
+        NoviaversionkickConfig config = NoviaversionkickConfig.get();
+        if (!config.budgetEnabled || channel == null) {
+            return true;
+        }
+        Attribute<ParticleBudget> attribute = channel.attr(KEY);
+        ParticleBudget budget = attribute.get();
+        if (budget == null) {
+            budget = new ParticleBudget();
+            attribute.set(budget);
+        }
+        int cached = ((ParticleEncodingCache) packet).noviaversionkick$cachedSize(legacy);
+        int bytes = cached >= 0 ? cached : ESTIMATED_PACKET_BYTES;
+        boolean forceSpawn = ((ParticleS2CPacketAccessor) packet).noviaversionkick$isForceSpawn();
+        return budget.consume(config, legacy, bytes, forceSpawn, System.nanoTime());
+    }
+
+    private boolean consume(NoviaversionkickConfig config, boolean legacy, int bytes, boolean forceSpawn, long now) {
+        double bytesPerSecond = legacy ? config.legacyBudgetBytesPerSecond : config.budgetBytesPerSecond;
+        double packetsPerSecond = legacy ? config.legacyBudgetPacketsPerSecond : config.budgetPacketsPerSecond;
+        double byteCapacity = bytesPerSecond * config.budgetBurstSeconds;
+        double packetCapacity = packetsPerSecond * config.budgetBurstSeconds;
+        if (Double.isNaN(this.byteTokens)) {
+            this.byteTokens = byteCapacity;
+            this.packetTokens = packetCapacity;
+        } else {
+            double elapsedSeconds = (now - this.lastRefill) / NANOS_PER_SECOND;
+            this.byteTokens = Math.min(byteCapacity, this.byteTokens + elapsedSeconds * bytesPerSecond);
+            this.packetTokens = Math.min(packetCapacity, this.packetTokens + elapsedSeconds * packetsPerSecond);
+        }
+        this.lastRefill = now;
+
+        if (!forceSpawn && (this.byteTokens < bytes || this.packetTokens < 1.0D)) {
+            return false;
+        }
+        // Forced particles may run the buckets into debt (bounded by one burst),
+        // which then holds back cosmetic particles until it is repaid.
+        this.byteTokens = Math.max(-byteCapacity, this.byteTokens - bytes);
+        this.packetTokens = Math.max(-packetCapacity, this.packetTokens - 1.0D);
+        return true;
+    }
+}
@@ -0,0 +1,170 @@
+package org.bacon.noviaversionkick.particle;
+
+import net.minecraft.network.ClientConnection;
+import net.minecraft.network.packet.Packet;
+import net.minecraft.network.packet.s2c.play.ParticleS2CPacket;
+import net.minecraft.server.network.ServerPlayNetworkHandler;
+import org.bacon.noviaversionkick.config.NoviaversionkickConfig;
+import org.bacon.noviaversionkick.mixin.ParticleS2CPacketAccessor;
+import org.bacon.noviaversionkick.mixin.ServerCommonNetworkHandlerAccessor;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Optional tick-end batching of world particle packets. While enabled, particles
+ * sent through {@code ServerWorld.spawnParticles} are held per connection and,
+ * when the tick ends, packets with the same effect, flags and speed whose
+ * positions fall in the same cell are merged into one packet with the summed
+ * count and offsets widened to cover the merged area.
+ */
+public final class ParticleCoalescer {
+    private static final Map<ServerPlayNetworkHandler, List<ParticleS2CPacket>> PENDING = new IdentityHashMap<>();
+    private static volatile Thread serverThread;
+
+    private ParticleCoalescer() {
+    }
+
+    public static void bindServerThread(Thread thread) {
+        serverThread = thread;
+    }
+
+    /**
+     * Queues a particle packet for the end of the tick. Returns false when the
+     * packet should be sent immediately instead.
+     */
+    public static boolean offer(ServerPlayNetworkHandler handler, Packet<?> packet) {
+        if (!NoviaversionkickConfig.get().coalesceParticles || !(packet instanceof ParticleS2CPacket particle)) {
+            return false;
+        }
+        // Queues are only touched from the server thread.
+        if (Thread.currentThread() != serverThread) {
+            return false;
+        }
+        // A zero count means "one particle with offsets as velocity" and cannot be summed.
+        if (((ParticleS2CPacketAccessor) particle).noviaversionkick$getCount() <= 0) {
+            return false;
+        }
+        PENDING.computeIfAbsent(handler, ignored -> new ArrayList<>()).add(particle);
+        return true;
+    }
+
+    public static void flush() {
+        if (PENDING.isEmpty()) {
+            return;
+        }
+        double cellSize = NoviaversionkickConfig.get().coalesceCellSize;
+        for (Map.Entry<ServerPlayNetworkHandler, List<ParticleS2CPacket>> entry : PENDING.entrySet()) {
+            flush(entry.getKey(), entry.getValue(), cellSize);
+        }
+        PENDING.clear();
+    }
+
+    public static void clear() {
+        PENDING.clear();
+    }
+
+    private static void flush(ServerPlayNetworkHandler handler, List<ParticleS2CPacket> packets, double cellSize) {
+        ClientConnection connection = ((ServerCommonNetworkHandlerAccessor) handler).noviaversionkick$getConnection();
+        if (!connection.isOpen()) {
+            return;
+        }
+        Map<MergeKey, Group> groups = new HashMap<>();
+        List<Group> ordered = new ArrayList<>();
+        for (ParticleS2CPacket packet : packets) {
+            ParticleS2CPacketAccessor accessor = (ParticleS2CPacketAccessor) packet;
+            MergeKey key = new MergeKey(
+                ParticleEffectKey.of(accessor.noviaversionkick$getParameters()),
+                accessor.noviaversionkick$isForceSpawn(),
+                accessor.noviaversionkick$isImportant(),
+                Float.floatToIntBits(accessor.noviaversionkick$getSpeed()),
+                (long) Math.floor(accessor.noviaversionkick$getX() / cellSize),
+                (long) Math.floor(accessor.noviaversionkick$getY() / cellSize),
+                (long) Math.floor(accessor.noviaversionkick$getZ() / cellSize)
+            );
+            Group group = groups.get(key);
+            if (group == null) {
+                group = new Group(packet);
+                groups.put(key, group);
+                ordered.add(group);
+            } else {
+                group.add(accessor);
+            }
+        }
+        for (Group group : ordered) {
+            connection.send(group.toPacket(), null, false);
+        }
+        connection.flush();
+    }
+
+    private record MergeKey(Object effect, boolean forceSpawn, boolean important, int speedBits, long cellX, long cellY, long cellZ) {
+    }
+
+    private static final class Group {
+        private final ParticleS2CPacket first;
+        private int merged = 1;
+        private double minX;
+        private double minY;
+        private double minZ;
+        private double maxX;
+        private double maxY;
+        private double maxZ;
+        private float offsetX;
+        private float offsetY;
+        private float offsetZ;
+        private long count;
+
+        Group(ParticleS2CPacket first) {
+            ParticleS2CPacketAccessor accessor = (ParticleS2CPacketAccessor) first;
+            this.first = first;
+            this.minX = this.maxX = accessor.noviaversionkick$getX();
+            this.minY = this.maxY = accessor.noviaversionkick$getY();
+            this.minZ = this.maxZ = accessor.noviaversionkick$getZ();
+            this.offsetX = accessor.noviaversionkick$getOffsetX();
+            this.offsetY = accessor.noviaversionkick$getOffsetY();
+            this.offsetZ = accessor.noviaversionkick$getOffsetZ();
+            this.count = accessor.noviaversionkick$getCount();
+        }
+
+        void add(ParticleS2CPacketAccessor accessor) {
+            this.merged++;
+            double x = accessor.noviaversionkick$getX();
+            double y = accessor.noviaversionkick$getY();
+            double z = accessor.noviaversionkick$getZ();
+            this.minX = Math.min(this.minX, x);
+            this.minY = Math.min(this.minY, y);
+            this.minZ = Math.min(this.minZ, z);
+            this.maxX = Math.max(this.maxX, x);
+            this.maxY = Math.max(this.maxY, y);
+            this.maxZ = Math.max(this.maxZ, z);
+            this.offsetX = Math.max(this.offsetX, accessor.noviaversionkick$getOffsetX());
+            this.offsetY = Math.max(this.offsetY, accessor.noviaversionkick$getOffsetY());
+            this.offsetZ = Math.max(this.offsetZ, accessor.noviaversionkick$getOffsetZ());
+            this.count += accessor.noviaversionkick$getCount();
+        }
+
+        ParticleS2CPacket toPacket() {
+            if (this.merged == 1) {
+                // Keep the original instance so it can share its encoded bytes.
+                return this.first;
+            }
+            ParticleS2CPacketAccessor accessor = (ParticleS2CPacketAccessor) this.first;
+            return new ParticleS2CPacket(
+                ParticleEffectKey.of(accessor.noviaversionkick$getParameters()),
+                accessor.noviaversionkick$isForceSpawn(),
+                accessor.noviaversionkick$isImportant(),
+                (this.minX + this.maxX) * 0.5D,
+                (this.minY + this.maxY) * 0.5D,
+                (this.minZ + this.maxZ) * 0.5D,
+                Math.max(this.offsetX, (float) ((this.maxX - this.minX) * 0.5D)),
+                Math.max(this.offsetY, (float) ((this.maxY - this.minY) * 0.5D)),
+                Math.max(this.offsetZ, (float) ((this.maxZ - this.minZ) * 0.5D)),
+                accessor.noviaversionkick$getSpeed(),
+                (int) Math.min(Integer.MAX_VALUE, this.count)
+            );
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package org.bacon.noviaversionkick.particle;
+
+import org.apache.logging.log4j.Logger;
+import org.bacon.noviaversionkick.config.NoviaversionkickConfig;
+import org.bacon.noviaversionkick.log.ModLogger;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Steps particle traffic down while the server is behind. Tick durations are
+ * timed around every server tick and smoothed; the level rises as soon as the
+ * smoothed time crosses the next threshold and falls one step at a time once it
+ * has stayed {@code adaptive.hysteresisMspt} below the current one for
+ * {@code adaptive.recoveryTicks}. Send paths read the level with one volatile load.
+ */
+public final class ParticleDegradation {
+    public static final int FULL = 0;
+    public static final int DOWNSAMPLED = 1;
+    public static final int FORCED_ONLY = 2;
+    public static final int NONE = 3;
+
+    private static final Logger LOGGER = ModLogger.get();
+    private static final String[] NAMES = {"full", "downsampled", "forced_only", "none"};
+    /** Weight of the newest tick; about a one-second time constant. */
+    private static final double SMOOTHING = 0.05D;
+    private static final AtomicLongArray ENTERED = new AtomicLongArray(NAMES.length);
+
+    private static volatile int level = FULL;
+    private static volatile double smoothedMspt;
+    private static long tickStart;
+    private static int calmTicks;
+
+    private ParticleDegradation() {
+    }
+
+    public static int level() {
+        return level;
+    }
+
+    public static String name(int level) {
+        return NAMES[level];
+    }
+
+    public static double smoothedMspt() {
+        return smoothedMspt;
+    }
+
+    /** Times a level has been entered, indexed by level. */
+    public static long entered(int level) {
+        return ENTERED.get(level);
+    }
+
+    /** Server thread only. */
+    public static void startTick() {
+        tickStart = System.nanoTime();
+    }
+
+    /** Server thread only. */
+    public static void endTick() {
+        NoviaversionkickConfig config = NoviaversionkickConfig.get();
+        if (!config.adaptiveEnabled) {
+            if (level != FULL) {
+                transition(FULL, smoothedMspt);
+            }
+            return;
+        }
+        if (tickStart == 0L) {
+            return;
+        }
+        double mspt = (System.nanoTime() - tickStart) / 1_000_000.0D;
+        double smoothed = smoothedMspt + SMOOTHING * (mspt - smoothedMspt);
+        smoothedMspt = smoothed;
+        int current = level;
+        int target = FULL;
+        if (smoothed >= config.adaptiveNoneMspt) {
+            target = NONE;
+        } else if (smoothed >= config.adaptiveForcedOnlyMspt) {
+            target = FORCED_ONLY;
+        } else if (smoothed >= config.adaptiveDownsampleMspt) {
+            target = DOWNSAMPLED;
+        }
+        if (target > current) {
+            calmTicks = 0;
+            transition(target, smoothed);
+            return;
+        }
+        if (current == FULL || smoothed >= threshold(config, current) - config.adaptiveHysteresisMspt) {
+            calmTicks = 0;
+            return;
+        }
+        if (++calmTicks >= config.adaptiveRecoveryTicks) {
+            calmTicks = 0;
+            transition(current - 1, smoothed);
+        }
+    }
+
+    private static double threshold(NoviaversionkickConfig config, int level) {
+        return switch (level) {
+            case DOWNSAMPLED -> config.adaptiveDownsampleMspt;
+            case FORCED_ONLY -> config.adaptiveForcedOnlyMspt;
+            default -> config.adaptiveNoneMspt;
+        };
+    }
+
+    private static void transition(int target, double mspt) {
+        int previous = level;
+        level = target;
+        ENTERED.incrementAndGet(target);
+        LOGGER.info(
+            "Particle degradation {} -> {} at {} ms per tick",
+            NAMES[previous],
+            NAMES[target],
+            String.format("%.1f", mspt)
+        );
+    }
+}
@@ -0,0 +1,96 @@
+package org.bacon.noviaversionkick.particle;
+
+import io.netty.channel.Channel;
+import org.bacon.noviaversionkick.log.ModLogger;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts particle packets discarded before encoding, per connection and per
+ * reason. Connections are registered on their first drop and forgotten when
+ * their channel goes inactive.
+ */
+public final class ParticleDropCounters {
+    private static final Reason[] REASONS = Reason.values();
+    private static final Map<Channel, ParticleDropCounters> LIVE = new ConcurrentHashMap<>();
+    private static final LongAdder[] TOTALS = new LongAdder[REASONS.length];
+
+    static {
+        for (int i = 0; i < TOTALS.length; i++) {
+            TOTALS[i] = new LongAdder();
+        }
+    }
+
+    private final String label;
+    private final AtomicLongArray counts = new AtomicLongArray(REASONS.length);
+
+    private ParticleDropCounters(String label) {
+        this.label = label;
+    }
+
+    public static void record(Channel channel, Reason reason) {
+        TOTALS[reason.ordinal()].increment();
+        if (channel == null) {
+            return;
+        }
+        ParticleDropCounters counters = LIVE.get(channel);
+        if (counters == null) {
+            // Writes queued before a disconnect can run after forget(); they still
+            // count towards the totals but must not re-register the dead channel.
+            if (!channel.isActive()) {
+                return;
+            }
+            counters = LIVE.computeIfAbsent(channel, key -> new ParticleDropCounters(ModLogger.describe(key)));
+        }
+        counters.counts.incrementAndGet(reason.ordinal());
+    }
+
+    public static void forget(Channel channel) {
+        if (channel != null) {
+            LIVE.remove(channel);
+        }
+    }
+
+    static Map<String, Long> totalsByReason() {
+        Map<String, Long> totals = new LinkedHashMap<>();
+        for (Reason reason : REASONS) {
+            totals.put(reason.name(), TOTALS[reason.ordinal()].sum());
+        }
+        return totals;
+    }
+
+    static Map<String, Long> totalsByConnection() {
+        Map<String, Long> totals = new LinkedHashMap<>();
+        for (ParticleDropCounters counters : LIVE.values()) {
+            long sum = 0L;
+            for (int i = 0; i < REASONS.length; i++) {
+                sum += counters.counts.get(i);
+            }
+            totals.merge(counters.label, sum, Long::sum);
+        }
+        return totals;
+    }
+
+    public enum Reason {
+        /** Particle type is configured as never sent to legacy clients. */
+        POLICY,
+        /** Connection's particle budget was exhausted. */
+        BUDGET,
+        /** Channel was above its outbound high-water mark. */
+        BACKPRESSURE,
+        /** Client renders minimal particles. */
+        CLIENT_SETTING,
+        /** Recipient was beyond the level-of-detail cutoff. */
+        DISTANCE,
+        /** Particle was behind the recipient's view. */
+        VIEW,
+        /** Same particle was sent to the connection within the last few ticks. */
+        DUPLICATE,
+        /** Server was behind and particles were being shed. */
+        OVERLOAD
+    }
+}
@@ -0,0 +1,83 @@
+package org.bacon.noviaversionkick.particle;
+
+import net.minecraft.block.Block;
+import net.minecraft.item.Item;
+import net.minecraft.item.ItemStack;
+import net.minecraft.particle.BlockStateParticleEffect;
+import net.minecraft.particle.DustParticleEffect;
+import net.minecraft.particle.ItemStackParticleEffect;
+import net.minecraft.particle.ParticleEffect;
+import net.minecraft.particle.ParticleType;
+import org.bacon.noviaversionkick.mixin.DustParticleEffectAccessor;
+
+/**
+ * Value identity for particle effects. Block, dust and item effects compare by
+ * reference and are created per spawn, so equal-looking particles are keyed on
+ * their type and payload here instead. Other effect classes keep reference
+ * equality; simple types are singletons, so that is exact for them.
+ */
+public final class ParticleEffectKey {
+    private ParticleEffectKey() {
+    }
+
+    /**
+     * Key with value equality for maps. Never merges effects the client would
+     * render differently.
+     */
+    public static Object of(ParticleEffect effect) {
+        if (effect instanceof BlockStateParticleEffect block) {
+            return new Payload(block.getType(), Block.getRawIdFromState(block.getBlockState()));
+        }
+        // Without mixins applied (benchmarks) dust effects carry no accessor.
+        if (effect instanceof DustParticleEffect dust && dust instanceof DustParticleEffectAccessor accessor) {
+            return new Payload(dust.getType(), dustPayload(accessor, dust));
+        }
+        if (effect instanceof ItemStackParticleEffect item) {
+            return new ItemPayload(item.getType(), item.getItemStack());
+        }
+        return effect;
+    }
+
+    /**
+     * 64-bit digest of type and payload for hashed sets. Allocation-free; item
+     * effects are told apart by item only.
+     */
+    public static long digest(ParticleEffect effect) {
+        if (effect == null) {
+            return -1L;
+        }
+        long type = ParticlePolicyTable.rawId(effect.getType());
+        long payload;
+        if (effect instanceof BlockStateParticleEffect block) {
+            payload = Block.getRawIdFromState(block.getBlockState());
+        } else if (effect instanceof DustParticleEffect dust && dust instanceof DustParticleEffectAccessor accessor) {
+            payload = dustPayload(accessor, dust);
+        } else if (effect instanceof ItemStackParticleEffect item) {
+            payload = Item.getRawId(item.getItemStack().getItem());
+        } else {
+            payload = System.identityHashCode(effect);
+        }
+        return type * 0x9E3779B97F4A7C15L ^ payload * 0xBF58476D1CE4E5B9L;
+    }
+
+    private static long dustPayload(DustParticleEffectAccessor accessor, DustParticleEffect dust) {
+        return (long) accessor.noviaversionkick$getColor() << 32 | Float.floatToIntBits(dust.getScale()) & 0xFFFFFFFFL;
+    }
+
+    private record Payload(ParticleType<?> type, long payload) {
+    }
+
+    private record ItemPayload(ParticleType<?> type, ItemStack stack) {
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof ItemPayload that
+                && this.type == that.type
+                && ItemStack.areItemsAndComponentsEqual(this.stack, that.stack);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * this.type.hashCode() + Item.getRawId(this.stack.getItem());
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package org.bacon.noviaversionkick.particle;
+
+import net.minecraft.network.RegistryByteBuf;
+import net.minecraft.network.codec.PacketCodec;
+import net.minecraft.network.packet.s2c.play.ParticleS2CPacket;
+
+/**
+ * Exposes the connection-aware encoder and the encoded-body cache kept on
+ * particle packets.
+ */
+public interface ParticleEncodingCache {
+    /**
+     * Writes the body in the encoding of the channel currently writing, falling
+     * back to {@code vanilla} for modern clients.
+     */
+    void noviaversionkick$encode(RegistryByteBuf buf, PacketCodec<RegistryByteBuf, ParticleS2CPacket> vanilla);
+
+    /**
+     * Size in bytes of the cached body for the given variant, or -1 when it has
+     * not been cached yet.
+     */
+    int noviaversionkick$cachedSize(boolean legacy);
+}
@@ -0,0 +1,63 @@
+package org.bacon.noviaversionkick.particle;
+
+import org.apache.logging.log4j.Logger;
+import org.bacon.noviaversionkick.log.ModLogger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * JMX view over the mod's particle counters.
+ */
+public final class ParticleMetrics implements ParticleMetricsMXBean {
+    private static final Logger LOGGER = ModLogger.get();
+    private static final String OBJECT_NAME = "org.bacon.noviaversionkick:type=ParticleMetrics";
+
+    private ParticleMetrics() {
+    }
+
+    public static void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(new ParticleMetrics(), name);
+            }
+        } catch (JMException | SecurityException exception) {
+            LOGGER.warn("Failed to register particle metrics MBean", exception);
+        }
+    }
+
+    @Override
+    public Map<String, Long> getDroppedByReason() {
+        return ParticleDropCounters.totalsByReason();
+    }
+
+    @Override
+    public Map<String, Long> getDroppedByConnection() {
+        return ParticleDropCounters.totalsByConnection();
+    }
+
+    @Override
+    public String getDegradationLevel() {
+        return ParticleDegradation.name(ParticleDegradation.level());
+    }
+
+    @Override
+    public double getSmoothedMspt() {
+        return ParticleDegradation.smoothedMspt();
+    }
+
+    @Override
+    public Map<String, Long> getDegradationTransitions() {
+        Map<String, Long> transitions = new LinkedHashMap<>();
+        for (int level = ParticleDegradation.FULL; level <= ParticleDegradation.NONE; level++) {
+            transitions.put(ParticleDegradation.name(level), ParticleDegradation.entered(level));
+        }
+        return transitions;
+    }
+}
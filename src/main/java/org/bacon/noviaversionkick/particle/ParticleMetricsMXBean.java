@@ -0,0 +1,20 @@
+package org.bacon.noviaversionkick.particle;
+
+import java.util.Map;
+
+/**
+ * Particle traffic metrics, registered as
+ * {@code org.bacon.noviaversionkick:type=ParticleMetrics}.
+ */
+public interface ParticleMetricsMXBean {
+    Map<String, Long> getDroppedByReason();
+
+    Map<String, Long> getDroppedByConnection();
+
+    String getDegradationLevel();
+
+    double getSmoothedMspt();
+
+    /** Times each degradation level has been entered. */
+    Map<String, Long> getDegradationTransitions();
+}
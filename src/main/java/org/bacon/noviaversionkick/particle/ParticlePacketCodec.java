@@ -0,0 +1,28 @@
+package org.bacon.noviaversionkick.particle;
+
+import net.minecraft.network.RegistryByteBuf;
+import net.minecraft.network.codec.PacketCodec;
+import net.minecraft.network.packet.s2c.play.ParticleS2CPacket;
+
+/**
+ * Replacement for {@link ParticleS2CPacket#CODEC}, installed when the packet class
+ * initialises. Encoding is routed through the packet's connection-aware encoder;
+ * only particle packets ever reach this codec, and it allocates nothing per call.
+ */
+public final class ParticlePacketCodec implements PacketCodec<RegistryByteBuf, ParticleS2CPacket> {
+    private final PacketCodec<RegistryByteBuf, ParticleS2CPacket> vanilla;
+
+    public ParticlePacketCodec(PacketCodec<RegistryByteBuf, ParticleS2CPacket> vanilla) {
+        this.vanilla = vanilla;
+    }
+
+    @Override
+    public ParticleS2CPacket decode(RegistryByteBuf buf) {
+        return this.vanilla.decode(buf);
+    }
+
+    @Override
+    public void encode(RegistryByteBuf buf, ParticleS2CPacket packet) {
+        ((ParticleEncodingCache) packet).noviaversionkick$encode(buf, this.vanilla);
+    }
+}
@@ -0,0 +1,93 @@
+package org.bacon.noviaversionkick.particle;
+
+import net.minecraft.particle.ParticleType;
+import net.minecraft.particle.ParticleTypes;
+import net.minecraft.registry.Registries;
+import net.minecraft.util.Identifier;
+import org.apache.logging.log4j.Logger;
+import org.bacon.noviaversionkick.config.NoviaversionkickConfig;
+import org.bacon.noviaversionkick.log.ModLogger;
+
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * Legacy encoding policy for every registered particle type, flattened into an
+ * array indexed by raw registry id. Built when the server starts, after the
+ * particle registry is frozen; the encode path only performs an array load.
+ */
+public final class ParticlePolicyTable {
+    private static final Logger LOGGER = ModLogger.get();
+    /** Every vanilla type carrying a block state; falling_dust is substituted first like the other falling_ types. */
+    private static final Set<String> BLOCK_STATE_TYPES = Set.of("block", "block_marker", "falling_dust", "dust_pillar", "block_crumble");
+    private static volatile ParticlePolicyTable current = new ParticlePolicyTable(new ParticleAction[0], -1);
+
+    private final ParticleAction[] actions;
+    private final int substituteId;
+
+    private ParticlePolicyTable(ParticleAction[] actions, int substituteId) {
+        this.actions = actions;
+        this.substituteId = substituteId;
+    }
+
+    public static ParticlePolicyTable current() {
+        return current;
+    }
+
+    public static void rebuild() {
+        Set<Identifier> dropped = NoviaversionkickConfig.get().droppedParticles;
+        int size = 0;
+        for (ParticleType<?> type : Registries.PARTICLE_TYPE) {
+            size = Math.max(size, Registries.PARTICLE_TYPE.getRawId(type) + 1);
+        }
+        ParticleAction[] actions = new ParticleAction[size];
+        Arrays.fill(actions, ParticleAction.PASS);
+        for (ParticleType<?> type : Registries.PARTICLE_TYPE) {
+            int rawId = Registries.PARTICLE_TYPE.getRawId(type);
+            if (type instanceof ParticleTypeIdCache cache) {
+                cache.noviaversionkick$setRawId(rawId);
+            }
+            actions[rawId] = classify(Registries.PARTICLE_TYPE.getId(type), dropped);
+        }
+        current = new ParticlePolicyTable(actions, Registries.PARTICLE_TYPE.getRawId(ParticleTypes.POOF));
+        LOGGER.debug("Built particle policy table for {} particle types", size);
+    }
+
+    /**
+     * Raw id of a particle type, from the cache filled by {@link #rebuild()} when
+     * available.
+     */
+    public static int rawId(ParticleType<?> type) {
+        // Without mixins applied (benchmarks) particle types carry no cache.
+        int rawId = type instanceof ParticleTypeIdCache cache ? cache.noviaversionkick$getRawId() : -1;
+        return rawId >= 0 ? rawId : Registries.PARTICLE_TYPE.getRawId(type);
+    }
+
+    public ParticleAction action(ParticleType<?> type, int rawId) {
+        if (rawId >= 0 && rawId < this.actions.length) {
+            return this.actions[rawId];
+        }
+        // Type registered after the last rebuild; classify it the slow way.
+        return classify(Registries.PARTICLE_TYPE.getId(type), NoviaversionkickConfig.get().droppedParticles);
+    }
+
+    public int substituteId() {
+        return this.substituteId >= 0 ? this.substituteId : Registries.PARTICLE_TYPE.getRawId(ParticleTypes.POOF);
+    }
+
+    private static ParticleAction classify(Identifier id, Set<Identifier> dropped) {
+        if (id == null) {
+            return ParticleAction.PASS;
+        }
+        if (dropped.contains(id)) {
+            return ParticleAction.DROP;
+        }
+        if (id.getPath().startsWith("falling_")) {
+            return ParticleAction.SUBSTITUTE;
+        }
+        if (Identifier.DEFAULT_NAMESPACE.equals(id.getNamespace()) && BLOCK_STATE_TYPES.contains(id.getPath())) {
+            return ParticleAction.ALIGN_TO_SURFACE;
+        }
+        return ParticleAction.PASS;
+    }
+}
@@ -0,0 +1,11 @@
+package org.bacon.noviaversionkick.particle;
+
+/**
+ * Raw registry id remembered on each particle type when the policy table is
+ * built, so the encode path does not need a registry lookup.
+ */
+public interface ParticleTypeIdCache {
+    int noviaversionkick$getRawId();
+
+    void noviaversionkick$setRawId(int rawId);
+}
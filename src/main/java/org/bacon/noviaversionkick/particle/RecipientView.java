@@ -0,0 +1,90 @@
+package org.bacon.noviaversionkick.particle;
+
+import io.netty.channel.Channel;
+import io.netty.util.Attribute;
+import io.netty.util.AttributeKey;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.util.math.Vec3d;
+import org.bacon.noviaversionkick.mixin.ClientConnectionAccessor;
+import org.bacon.noviaversionkick.mixin.ServerCommonNetworkHandlerAccessor;
+
+/**
+ * Where a player's eyes were and where they were looking at the end of the last
+ * tick, attached to their channel so the particle stage on the event loop can
+ * filter by it without touching the player entity. Fields are written by the
+ * server thread and read without locking; a read spanning an update mixes two
+ * consecutive ticks, which is close enough for level of detail.
+ */
+public final class RecipientView {
+    private static final AttributeKey<RecipientView> KEY = AttributeKey.valueOf("noviaversionkick:recipient_view");
+
+    private volatile double x;
+    private volatile double y;
+    private volatile double z;
+    private volatile double lookX;
+    private volatile double lookY;
+    private volatile double lookZ;
+
+    private RecipientView() {
+    }
+
+    public static RecipientView get(Channel channel) {
+        return channel.attr(KEY).get();
+    }
+
+    /**
+     * Snapshots every online player. Called on the server thread at the end of
+     * each tick.
+     */
+    public static void capture(MinecraftServer server) {
+        for (ServerPlayerEntity player : server.getPlayerManager().getPlayerList()) {
+            if (player.networkHandler == null) {
+                continue;
+            }
+            Channel channel = ((ClientConnectionAccessor) ((ServerCommonNetworkHandlerAccessor) player.networkHandler)
+                .noviaversionkick$getConnection()).noviaversionkick$getChannel();
+            if (channel == null) {
+                continue;
+            }
+            Attribute<RecipientView> attribute = channel.attr(KEY);
+            RecipientView view = attribute.get();
+            boolean created = view == null;
+            if (created) {
+                view = new RecipientView();
+            }
+            view.update(player);
+            if (created) {
+                // Published only once filled, so no reader measures from the origin.
+                attribute.set(view);
+            }
+        }
+    }
+
+    private void update(ServerPlayerEntity player) {
+        Vec3d look = player.getRotationVector();
+        this.x = player.getX();
+        this.y = player.getEyeY();
+        this.z = player.getZ();
+        this.lookX = look.x;
+        this.lookY = look.y;
+        this.lookZ = look.z;
+    }
+
+    public double distanceSq(double x, double y, double z) {
+        double dx = x - this.x;
+        double dy = y - this.y;
+        double dz = z - this.z;
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    /**
+     * Whether the point lies outside the cone around the look vector whose
+     * half-angle has the given cosine. {@code distanceSq} is the point's squared
+     * distance from {@link #distanceSq}.
+     */
+    public boolean isBehind(double x, double y, double z, double distanceSq, double minCos) {
+        double dot = (x - this.x) * this.lookX + (y - this.y) * this.lookY + (z - this.z) * this.lookZ;
+        return dot < minCos * Math.sqrt(distanceSq);
+    }
+}
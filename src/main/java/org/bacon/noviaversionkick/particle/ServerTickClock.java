@@ -0,0 +1,21 @@
+package org.bacon.noviaversionkick.particle;
+
+/**
+ * Server tick counter readable from event loops, advanced at the end of every
+ * tick.
+ */
+public final class ServerTickClock {
+    private static volatile long tick;
+
+    private ServerTickClock() {
+    }
+
+    public static long current() {
+        return tick;
+    }
+
+    /** Server thread only. */
+    public static void advance() {
+        tick = tick + 1;
+    }
+}
@@ -0,0 +1,90 @@
+package org.bacon.noviaversionkick.particle;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import net.minecraft.Bootstrap;
+import net.minecraft.SharedConstants;
+import net.minecraft.block.Blocks;
+import net.minecraft.network.RegistryByteBuf;
+import net.minecraft.particle.BlockStateParticleEffect;
+import net.minecraft.particle.DustParticleEffect;
+import net.minecraft.particle.ParticleEffect;
+import net.minecraft.particle.ParticleTypes;
+import net.minecraft.registry.DynamicRegistryManager;
+import net.minecraft.registry.Registries;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Steady-state legacy writes into a reused pooled buffer must not allocate.
+ * Vanilla is booted the same way as {@code BenchmarkBootstrap}; mixins are not
+ * applied, so the writer is called directly.
+ */
+class LegacyParticleWriterAllocationTest {
+    private static final int WARMUP_WRITES = 200_000;
+    private static final int MEASURED_WRITES = 10_000;
+
+    private static com.sun.management.ThreadMXBean threads;
+    private static RegistryByteBuf buf;
+    private static ByteBuf pooled;
+
+    @BeforeAll
+    static void bootstrap() {
+        SharedConstants.createGameVersion();
+        Bootstrap.initialize();
+        DynamicRegistryManager registries = DynamicRegistryManager.of(Registries.REGISTRIES);
+        ParticlePolicyTable.rebuild();
+        threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assertTrue(threads.isThreadAllocatedMemorySupported(), "JVM does not report per-thread allocation");
+        threads.setThreadAllocatedMemoryEnabled(true);
+        pooled = PooledByteBufAllocator.DEFAULT.heapBuffer(512);
+        buf = new RegistryByteBuf(pooled, registries);
+    }
+
+    @AfterAll
+    static void release() {
+        pooled.release();
+    }
+
+    @Test
+    void simpleEffectDoesNotAllocate() {
+        assertSteadyStateAllocationFree(ParticleTypes.FLAME);
+    }
+
+    @Test
+    void dustEffectDoesNotAllocate() {
+        assertSteadyStateAllocationFree(new DustParticleEffect(0xFF3355, 1.5F));
+    }
+
+    @Test
+    void blockEffectDoesNotAllocate() {
+        assertSteadyStateAllocationFree(
+            new BlockStateParticleEffect(ParticleTypes.BLOCK, Blocks.STONE.getDefaultState())
+        );
+    }
+
+    private static void assertSteadyStateAllocationFree(ParticleEffect effect) {
+        long threadId = Thread.currentThread().threadId();
+        writeRepeatedly(effect, WARMUP_WRITES);
+        // Subtract whatever the measurement itself costs.
+        long overhead = -threads.getThreadAllocatedBytes(threadId);
+        overhead += threads.getThreadAllocatedBytes(threadId);
+        long before = threads.getThreadAllocatedBytes(threadId);
+        writeRepeatedly(effect, MEASURED_WRITES);
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before - overhead;
+        assertEquals(0L, allocated, "bytes allocated over " + MEASURED_WRITES + " writes");
+    }
+
+    private static void writeRepeatedly(ParticleEffect effect, int writes) {
+        for (int i = 0; i < writes; i++) {
+            buf.clear();
+            LegacyParticleWriter.write(buf, effect, false, 10.5D, 64.0D, -3.25D, 0.2F, 0.2F, 0.2F, 0.05F, 12);
+        }
+    }
+}